@@ -0,0 +1,72 @@
+package atunstall.server.io.api;
+
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+
+import java.util.function.Consumer;
+
+/**
+ * Consumer of the buffer read by an input stream that reports its progress instead of throwing exceptions.
+ * Unlike consumers that throw, a consumer that needs more data does not cause the buffer to be rolled back, so it should only consume complete messages.
+ */
+@FunctionalInterface
+public interface BufferConsumer {
+    /**
+     * Status indicating that the consumer has consumed data and should be called again if the buffer is not empty.
+     */
+    long CONSUMED = 0L;
+
+    /**
+     * Status indicating that the consumer is finished and should be removed from the queue, so that the next consumer receives the buffer.
+     */
+    long DONE = -1L;
+
+    /**
+     * Consumes data from the given buffer.
+     * A positive status is the number of bytes the buffer must contain before this consumer can make progress.
+     * The stream does not call the consumer again until that many bytes are buffered or the stream is closed.
+     * @param buffer The buffer read by the stream.
+     * @return {@link #CONSUMED}, {@link #DONE}, or the number of bytes needed.
+     */
+    long consume(ParsableByteBuffer buffer);
+
+    /**
+     * Called once if this consumer is still queued when the stream has closed and every buffered byte has been passed to the consumers,
+     * or when the stream drops this consumer because it failed or can no longer make progress.
+     * No more data will be passed to this consumer.
+     */
+    default void end() {
+        // Empty
+    }
+
+    /**
+     * Returns the status indicating that the consumer needs more data, without knowing how much.
+     * @param buffer The buffer passed to the consumer.
+     * @return The status requesting at least one more byte.
+     */
+    static long needMore(ParsableByteBuffer buffer) {
+        return buffer.count() + 1L;
+    }
+
+    /**
+     * Adapts a consumer that follows the contract of {@link InputStream#queueConsumer(Consumer)}.
+     * The adapted consumer is done once it returns without consuming any data.
+     * If it throws an exception, the buffer is rolled back when possible and the adapted consumer asks for one more byte.
+     * @param consumer The consumer to adapt.
+     * @return The adapted consumer.
+     */
+    static BufferConsumer of(Consumer<? super ParsableByteBuffer> consumer) {
+        return buffer -> {
+            long consumed = buffer.bytesConsumed();
+            try {
+                consumer.accept(buffer);
+            } catch (RuntimeException e) {
+                // Such consumers throw when they need more data
+                if (buffer instanceof AppendableParsableByteBuffer) {
+                    ((AppendableParsableByteBuffer) buffer).rollback();
+                }
+                return needMore(buffer);
+            }
+            return buffer.bytesConsumed() > consumed ? CONSUMED : DONE;
+        };
+    }
+}
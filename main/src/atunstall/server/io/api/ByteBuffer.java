@@ -40,6 +40,18 @@ public interface ByteBuffer {
      */
     void apply(long index, long count, Consumer<byte[]> consumer);
 
+    /**
+     * Passes the bytes in order to the visitor without copying them.
+     * The visitor may be called several times if the bytes are not stored contiguously.
+     * This should be preferred over {@link #apply(long, long, Consumer)} when the bytes are only read.
+     * @param index The index of the first byte to visit.
+     * @param count The number of bytes to visit.
+     * @param visitor The visitor to which to lend the bytes.
+     */
+    default void visit(long index, long count, ByteRangeVisitor visitor) {
+        apply(index, count, b -> visitor.visit(b, 0, b.length));
+    }
+
     /**
      * Returns a partition of this buffer.
      * If the requested partition doesn't already exist, it is created.
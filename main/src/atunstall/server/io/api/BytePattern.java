@@ -0,0 +1,49 @@
+package atunstall.server.io.api;
+
+/**
+ * A byte sequence prepared for repeated searches.
+ * Patterns are immutable and can be shared between threads, so they should be created once and reused.
+ */
+public interface BytePattern {
+    /**
+     * Returns the number of bytes in this pattern.
+     * @return The length of the byte sequence.
+     */
+    int length();
+
+    /**
+     * Returns the byte at the given index of this pattern.
+     * @param index The index of the byte.
+     * @return The byte.
+     */
+    byte get(int index);
+
+    /**
+     * Finds the first occurrence of this pattern that lies entirely within the given array range.
+     * @param bytes The array to search.
+     * @param from The index of the first byte to search.
+     * @param to The index following the last byte to search.
+     * @return The array index of the occurrence, or -1 if there is none.
+     */
+    int indexIn(byte[] bytes, int from, int to);
+
+    /**
+     * Finds the first occurrence of this pattern that lies entirely within the given range of a NIO buffer.
+     * The range uses absolute indexes, so the position and limit of the buffer are ignored and left unchanged.
+     * @param bytes The buffer to search.
+     * @param from The index of the first byte to search.
+     * @param to The index following the last byte to search.
+     * @return The buffer index of the occurrence, or -1 if there is none.
+     */
+    int indexIn(java.nio.ByteBuffer bytes, int from, int to);
+
+    /**
+     * Finds the first occurrence of this pattern that lies entirely within the given range of a byte buffer.
+     * This reads the buffer one byte at a time, so the other methods should be preferred when the storage is accessible.
+     * @param buffer The buffer to search.
+     * @param from The index of the first byte to search.
+     * @param to The index following the last byte to search.
+     * @return The buffer index of the occurrence, or -1 if there is none.
+     */
+    long indexIn(ByteBuffer buffer, long from, long to);
+}
@@ -0,0 +1,21 @@
+package atunstall.server.io.api;
+
+/**
+ * Receives the storage of a byte buffer without copying it.
+ * The storage is only lent for the duration of each call and must not be modified.
+ */
+public interface ByteRangeVisitor {
+    /**
+     * Visits a range of bytes stored in an array.
+     * @param bytes The array containing the bytes.
+     * @param offset The index of the first byte of the range.
+     * @param count The number of bytes in the range.
+     */
+    void visit(byte[] bytes, int offset, int count);
+
+    /**
+     * Visits a range of bytes that are not stored in an accessible array.
+     * @param bytes A read-only view of the bytes, from its position to its limit.
+     */
+    void visit(java.nio.ByteBuffer bytes);
+}
@@ -0,0 +1,180 @@
+package atunstall.server.io.api;
+
+import java.nio.CharBuffer;
+
+/**
+ * Cursor that decodes primitives from the start of a parsable byte buffer.
+ * Reads advance the cursor without modifying the buffer, which is only modified when {@link #commit()} is called.
+ * The buffer must therefore not be consumed by anything else while it is attached to the reader.
+ * Readers are not thread-safe, but they can be reused by attaching them to another buffer.
+ */
+public interface ByteReader {
+    /**
+     * Attaches this reader to the given buffer.
+     * The cursor and the mark are moved to the start of the buffer.
+     * @param buffer The buffer to read from.
+     * @return This reader.
+     */
+    ByteReader attach(ParsableByteBuffer buffer);
+
+    /**
+     * Returns the position of the cursor, which is the number of bytes read since the last commit.
+     * @return The index of the next byte to read in the attached buffer.
+     */
+    long position();
+
+    /**
+     * Returns the number of bytes that can still be read from the attached buffer.
+     * @return The number of bytes after the cursor.
+     */
+    long remaining();
+
+    /**
+     * Checks whether the given number of bytes can be read from the attached buffer.
+     * Checking once before decoding a structure of known size is cheaper than catching the exception thrown by a read.
+     * @param count The number of bytes.
+     * @return True if the buffer contains at least that many bytes after the cursor, false otherwise.
+     */
+    boolean has(long count);
+
+    /**
+     * Moves the cursor forward by the given number of bytes.
+     * @param count The number of bytes to skip.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    void skip(long count);
+
+    /**
+     * Remembers the current position of the cursor so that it can be returned to by {@link #reset()}.
+     */
+    void mark();
+
+    /**
+     * Moves the cursor back to the last mark, or to the last commit if there is no mark.
+     */
+    void reset();
+
+    /**
+     * Consumes every byte before the cursor from the attached buffer.
+     * This moves the cursor and the mark back to the start of the buffer.
+     */
+    void commit();
+
+    /**
+     * Reads a signed byte.
+     * @return The byte.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    byte readByte();
+
+    /**
+     * Reads an unsigned byte.
+     * @return The byte, between 0 and 255.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    int readUnsignedByte();
+
+    /**
+     * Reads a big-endian short.
+     * @return The short.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    short readShort();
+
+    /**
+     * Reads a little-endian short.
+     * @return The short.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    short readShortLE();
+
+    /**
+     * Reads a big-endian int.
+     * @return The int.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    int readInt();
+
+    /**
+     * Reads a little-endian int.
+     * @return The int.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    int readIntLE();
+
+    /**
+     * Reads a big-endian long.
+     * @return The long.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    long readLong();
+
+    /**
+     * Reads a little-endian long.
+     * @return The long.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    long readLongLE();
+
+    /**
+     * Reads an unsigned LEB128 variable-length int, as used by Protocol Buffers.
+     * @return The int.
+     * @throws IllegalStateException If the buffer does not contain enough bytes or the int is longer than 5 bytes.
+     */
+    int readVarInt();
+
+    /**
+     * Reads an unsigned LEB128 variable-length long, as used by Protocol Buffers.
+     * @return The long.
+     * @throws IllegalStateException If the buffer does not contain enough bytes or the long is longer than 10 bytes.
+     */
+    long readVarLong();
+
+    /**
+     * Reads a zigzag-encoded variable-length int.
+     * @return The int.
+     * @throws IllegalStateException If the buffer does not contain enough bytes or the int is longer than 5 bytes.
+     */
+    default int readZigZagInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a zigzag-encoded variable-length long.
+     * @return The long.
+     * @throws IllegalStateException If the buffer does not contain enough bytes or the long is longer than 10 bytes.
+     */
+    default long readZigZagLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    /**
+     * Reads bytes into the given array.
+     * @param bytes The array to read into.
+     * @param offset The index in the array of the first byte to read.
+     * @param count The number of bytes to read.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    void read(byte[] bytes, int offset, int count);
+
+    /**
+     * Decodes the given number of UTF-8 bytes and appends the characters to the given builder.
+     * Malformed sequences are replaced with U+FFFD.
+     * @param count The number of bytes to decode.
+     * @param destination The builder to append to.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     */
+    void readUtf8(int count, StringBuilder destination);
+
+    /**
+     * Decodes the given number of UTF-8 bytes and puts the characters into the given buffer.
+     * Malformed sequences are replaced with U+FFFD.
+     * @param count The number of bytes to decode.
+     * @param destination The buffer to put the characters into.
+     * @throws IllegalStateException If the buffer does not contain enough bytes.
+     * @throws java.nio.BufferOverflowException If the characters do not fit in the remaining space of the destination.
+     */
+    void readUtf8(int count, CharBuffer destination);
+}
@@ -6,6 +6,17 @@ import java.util.function.Consumer;
  * Models an object capable of outputting binary data.
  */
 public interface InputStream extends AutoCloseable {
+    /**
+     * Adds a consumer to the FIFO queue of consumers that this stream should send the read buffer to.
+     * The consumer is called with the buffer until it returns {@link BufferConsumer#DONE}, at which point it is removed from the queue and the next consumer is used.
+     * If the consumer returns a number of needed bytes, it will not be called again until the buffer contains that many bytes.
+     * If the consumer needs more data and the stream has been closed, the consumer will be removed from the queue and the next consumer will be used.
+     * Once this stream has been closed, it will continue sending the buffer to the consumers until the buffer is empty, and then call {@link BufferConsumer#end()} on the remaining consumers.
+     * If this stream is closed and the buffer is empty, the consumer is ended immediately.
+     * @param consumer The consumer to add.
+     */
+    void queue(BufferConsumer consumer);
+
     /**
      * Adds a consumer to the FIFO queue of consumers that this stream should send the read buffer to.
      * The consumer must throw an exception to indicate that it does not have enough data.
@@ -15,9 +26,12 @@ public interface InputStream extends AutoCloseable {
      * If a consumer returns without consuming any data, the consumer will be removed from the queue and the next consumer will be used.
      * Once this stream has been closed, it will continue sending the buffer to the consumers until the buffer is empty.
      * If this stream is closed and the buffer is empty, this method will do nothing.
+     * {@link #queue(BufferConsumer)} should be preferred, as throwing an exception and restoring the buffer is expensive.
      * @param consumer The consumer to set this to.
      */
-    void queueConsumer(Consumer<? super ParsableByteBuffer> consumer);
+    default void queueConsumer(Consumer<? super ParsableByteBuffer> consumer) {
+        queue(BufferConsumer.of(consumer));
+    }
 
     /**
      * Checks if this stream is closed.
@@ -25,4 +39,19 @@ public interface InputStream extends AutoCloseable {
      * @return True if this stream is closed, false otherwise.
      */
     boolean isClosed();
+
+    /**
+     * Bounds the number of bytes this stream reads ahead of its consumers.
+     * Once more than the high watermark is buffered, the stream stops reading from its source until its consumers have brought the buffer down to the low watermark.
+     * Reading never stops while a consumer is waiting for more data, so a single message may exceed the high watermark.
+     * Streams that do not read ahead ignore this.
+     * @param low The number of buffered bytes at or below which reading resumes.
+     * @param high The number of buffered bytes at or above which reading stops.
+     * @throws IllegalArgumentException If the low watermark is negative or greater than the high watermark.
+     */
+    default void setWatermarks(long low, long high) {
+        if (low < 0L || low > high) {
+            throw new IllegalArgumentException("invalid watermarks");
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package atunstall.server.io.api;
 
+import atunstall.server.io.api.fs.File;
+
 import java.util.function.Consumer;
 
 /**
@@ -14,4 +16,18 @@ public interface OutputStream extends Consumer<ByteBuffer>, AutoCloseable {
             b.consumeAll();
         };
     }
+
+    /**
+     * Accepts a region of a file instead of its bytes, so that streams backed by a channel can transfer it without copying it.
+     * The region is truncated to the end of the file, so it is empty if it starts after the end.
+     * By default, the region is mapped into memory and accepted as a buffer.
+     * @param file The file to transfer from.
+     * @param offset The position in the file of the first byte of the region.
+     * @param count The number of bytes in the region.
+     */
+    default void accept(File<?> file, long offset, long count) {
+        long size = file.getSize();
+        long start = Math.min(offset, size);
+        accept(file.map(start, Math.min(count, size - start)));
+    }
 }
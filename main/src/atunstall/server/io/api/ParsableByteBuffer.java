@@ -3,6 +3,9 @@ package atunstall.server.io.api;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 
 /**
  * Parsable buffer used by input sources.
@@ -12,10 +15,50 @@ public interface ParsableByteBuffer extends ByteBuffer {
      * Finds the first occurrence starting from the given index of the given byte sequence in this buffer.
      * @param index The starting index of the search.
      * @param sequence The sequence of bytes to look for.
+     * @return The index of the occurrence of the sequence, or -1 if the buffer does not contain an occurrence of the sequence.
+     */
+    long indexOf(long index, byte[] sequence);
+
+    /**
+     * Finds the first occurrence starting from the given index of the given pattern in this buffer.
+     * This should be preferred over {@link #indexOf(long, byte[])} when the same sequence is searched for repeatedly.
+     * @param index The starting index of the search.
+     * @param pattern The pattern to look for.
+     * @return The index of the occurrence of the pattern, or -1 if the buffer does not contain an occurrence of the pattern.
+     */
+    long indexOf(long index, BytePattern pattern);
+
+    /**
+     * Finds the first occurrence starting from the given index of the given byte sequence in this buffer.
+     * {@link #indexOf(long, byte[])} should be preferred when the sequence may be missing.
+     * @param index The starting index of the search.
+     * @param sequence The sequence of bytes to look for.
      * @return The index of the occurrence of the sequence, such that {@link #get(long, byte[], int, int)} reads the given sequence from this buffer.
-     * @throws RuntimeException If the buffer does not contain an occurrence of the sequence.
+     * @throws IllegalStateException If the buffer does not contain an occurrence of the sequence.
      */
-    long find(long index, byte[] sequence);
+    default long find(long index, byte[] sequence) {
+        long result = indexOf(index, sequence);
+        if (result < 0L) {
+            throw new IllegalStateException("sequence missing");
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first occurrence starting from the given index of the given pattern in this buffer.
+     * {@link #indexOf(long, BytePattern)} should be preferred when the pattern may be missing.
+     * @param index The starting index of the search.
+     * @param pattern The pattern to look for.
+     * @return The index of the occurrence of the pattern.
+     * @throws IllegalStateException If the buffer does not contain an occurrence of the pattern.
+     */
+    default long find(long index, BytePattern pattern) {
+        long result = indexOf(index, pattern);
+        if (result < 0L) {
+            throw new IllegalStateException("sequence missing");
+        }
+        return result;
+    }
 
     /**
      * Compares the bytes at the given index to the given sequence.
@@ -57,18 +100,55 @@ public interface ParsableByteBuffer extends ByteBuffer {
      */
     default List<ParsableByteBuffer> split(byte[] splitter) {
         List<ParsableByteBuffer> result = new ArrayList<>();
-        long index = 0L, last = index;
-        while (true) {
-            try {
-                index = find(last, splitter);
-            } catch (IllegalStateException e) {
-                return result;
-            } finally {
-                result.add(partition(last, index - last));
-            }
+        long index, last = 0L;
+        while ((index = indexOf(last, splitter)) >= 0L) {
+            result.add(partition(last, index - last));
             last = index + splitter.length;
-            index = count();
         }
+        result.add(partition(last, count() - last));
+        return result;
+    }
+
+    /**
+     * Creates partitions of this buffer separated by the given pattern.
+     * The created partitions do not include the pattern.
+     * @param splitter The pattern around which to split this buffer.
+     * @return The partitions as a list.
+     */
+    default List<ParsableByteBuffer> split(BytePattern splitter) {
+        List<ParsableByteBuffer> result = new ArrayList<>();
+        tokens(splitter).forEachRemaining(result::add);
+        return result;
+    }
+
+    /**
+     * Lazily creates partitions of this buffer separated by the given pattern.
+     * Each partition is only searched for and created when it is requested, so iteration can be stopped early without scanning the rest of the buffer.
+     * The buffer must not be consumed while the spliterator is in use.
+     * Use {@code StreamSupport.stream(buffer.tokens(splitter), false)} to process the partitions as a stream.
+     * @param splitter The pattern around which to split this buffer.
+     * @return An ordered spliterator over the partitions, which do not include the pattern.
+     */
+    default Spliterator<ParsableByteBuffer> tokens(BytePattern splitter) {
+        return new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private long last = 0L;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super ParsableByteBuffer> action) {
+                if (last < 0L) {
+                    return false;
+                }
+                long index = indexOf(last, splitter);
+                if (index < 0L) {
+                    action.accept(partition(last, count() - last));
+                    last = -1L;
+                } else {
+                    action.accept(partition(last, index - last));
+                    last = index + splitter.length();
+                }
+                return true;
+            }
+        };
     }
 
     /**
@@ -0,0 +1,21 @@
+package atunstall.server.io.api.fs;
+
+/**
+ * Determines when the data written to a file is forced to the storage device.
+ */
+public enum Durability {
+    /**
+     * Never forces the data, leaving it to the operating system.
+     */
+    NONE,
+
+    /**
+     * Forces the data each time a batch of writes reaches the file.
+     */
+    BATCH,
+
+    /**
+     * Forces the data once the stream is closed.
+     */
+    CLOSE
+}
@@ -1,9 +1,14 @@
 package atunstall.server.io.api.fs;
 
+import atunstall.server.io.api.ByteBuffer;
 import atunstall.server.io.api.InputStream;
 import atunstall.server.io.api.OutputStream;
+import atunstall.server.io.api.ParsableByteBuffer;
 
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Models a file on a file system.
@@ -17,17 +22,93 @@ public interface File<T> {
 
     /**
      * Creates a new input stream bound to this file.
+     * This is equivalent to {@code newInputStream(0L, Long.MAX_VALUE)}.
      * @return The created input stream.
      */
-    InputStream newInputStream();
+    default InputStream newInputStream() {
+        return newInputStream(0L, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new input stream bound to a range of this file.
+     * The stream closes once it has read the given number of bytes or reached the end of the file.
+     * @param offset The position in the file of the first byte to read.
+     * @param length The maximum number of bytes to read.
+     * @return The created input stream.
+     * @throws IllegalArgumentException If the offset or the length is negative.
+     */
+    InputStream newInputStream(long offset, long length);
+
+    /**
+     * Reads a range of this file without creating a stream.
+     * @param position The position in the file of the first byte to read.
+     * @param length The maximum number of bytes to read.
+     * @return A stage completed with the read bytes, which are fewer than requested if the end of the file is reached.
+     * @throws IllegalArgumentException If the position or the length is negative.
+     */
+    default CompletionStage<ByteBuffer> read(long position, int length) {
+        return read(new long[] {position}, new int[] {length}).thenApply(buffers -> buffers.get(0));
+    }
+
+    /**
+     * Reads several ranges of this file at once, using a single open handle to the file.
+     * @param positions The position in the file of the first byte of each range.
+     * @param lengths The maximum number of bytes to read in each range.
+     * @return A stage completed with the read bytes of each range, in the same order as the given ranges.
+     * @throws IllegalArgumentException If the arrays have different lengths, or if a position or a length is negative.
+     */
+    CompletionStage<List<ByteBuffer>> read(long[] positions, int[] lengths);
 
     /**
      * Creates a new output stream to write to this file.
      * The returned stream is thread-safe.
      * If this file already exists, it will be overwritten when it is written to.
+     * This is equivalent to {@code newOutputStream(Durability.NONE)}.
      * @return The output stream that should be used to write to this file.
      */
-    OutputStream newOutputStream();
+    default OutputStream newOutputStream() {
+        return newOutputStream(Durability.NONE);
+    }
+
+    /**
+     * Creates a new output stream to write to this file.
+     * The returned stream is thread-safe and may combine small writes, which are only guaranteed to reach the file once the stream is closed.
+     * If this file already exists, it will be overwritten when it is written to.
+     * @param durability When the written data should be forced to the storage device.
+     * @return The output stream that should be used to write to this file.
+     */
+    OutputStream newOutputStream(Durability durability);
+
+    /**
+     * Transfers a region of this file to the given channel.
+     * This should be preferred over reading the file and writing the read bytes, as the operating system may transfer the bytes directly.
+     * @param target The channel to write the bytes to, which should be in blocking mode.
+     * @param offset The position in the file of the first byte to transfer.
+     * @param count The maximum number of bytes to transfer.
+     * @return The number of bytes transferred, which is fewer than requested if the end of the file is reached or the channel stops accepting bytes.
+     * @throws java.io.UncheckedIOException If an I/O error occurs.
+     */
+    long transferTo(WritableByteChannel target, long offset, long count);
+
+    /**
+     * Maps the whole file into memory.
+     * This is equivalent to {@code map(0L, getSize())}.
+     * @return The mapped contents of the file.
+     */
+    default ParsableByteBuffer map() {
+        return map(0L, getSize());
+    }
+
+    /**
+     * Maps a range of this file into memory, which is preferred over an input stream for large files that are read repeatedly or randomly.
+     * The returned buffer reads the file without copying it and never writes to it, so its contents may change if the file is modified.
+     * Clearing bytes, or consuming bytes that are not at either end of the buffer, first copies the remaining bytes of the mapped window that contains them to the heap.
+     * @param position The position in the file of the first byte to map.
+     * @param count The number of bytes to map.
+     * @return The mapped range of the file.
+     * @throws IllegalArgumentException If the range is not within the file.
+     */
+    ParsableByteBuffer map(long position, long count);
 
     /**
      * Checks whether this file exists in the file system.
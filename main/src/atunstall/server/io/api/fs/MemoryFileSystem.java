@@ -0,0 +1,20 @@
+package atunstall.server.io.api.fs;
+
+import atunstall.server.core.api.Unique;
+import atunstall.server.core.api.Version;
+
+/**
+ * Provides a file system whose files are only stored in memory, for transient data and for testing code that uses files.
+ * Paths are strings of names separated by {@code /}, and every path is relative to the root of the file system.
+ * Files are created by opening an output stream to them, so directories do not need to be created.
+ */
+@Version(major = 1, minor = 0)
+@Unique
+public interface MemoryFileSystem extends FileSystem<String> {
+    /**
+     * Deletes the file mapped to the given path, releasing its memory once every stream reading it has been closed.
+     * @param path The path of the file to delete.
+     * @return True if the file existed, false otherwise.
+     */
+    boolean delete(String path);
+}
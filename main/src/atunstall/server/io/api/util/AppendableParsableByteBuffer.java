@@ -21,6 +21,21 @@ public interface AppendableParsableByteBuffer extends ParsableByteBuffer {
      */
     void append(ByteBuffer buffer);
 
+    /**
+     * Reserves space at the end of this byte buffer so that it can be written to directly, for example by a channel.
+     * The reserved bytes are only appended to this byte buffer once {@link #commit(int)} is called.
+     * The returned view is invalidated by any other modification of this byte buffer.
+     * @param count The number of bytes to reserve.
+     * @return A writable view of the reserved space, with its position set to 0 and its limit set to the number of reserved bytes.
+     */
+    java.nio.ByteBuffer reserve(int count);
+
+    /**
+     * Appends the given number of bytes previously written to the space returned by {@link #reserve(int)}.
+     * @param count The number of bytes to append.
+     */
+    void commit(int count);
+
     /**
      * Rolls back this byte buffer to the last backup.
      */
@@ -30,4 +45,11 @@ public interface AppendableParsableByteBuffer extends ParsableByteBuffer {
      * Updates this byte buffer's backup to match the currently stored data.
      */
     void updateBackup();
+
+    /**
+     * Returns this byte buffer's storage to the pool it was allocated from.
+     * The buffer is emptied, and will allocate new storage if it is appended to again.
+     * Partitions of this byte buffer must not be used after it has been released.
+     */
+    void release();
 }
@@ -3,6 +3,8 @@ package atunstall.server.io.api.util;
 import atunstall.server.core.api.Unique;
 import atunstall.server.core.api.Version;
 import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ByteReader;
 import atunstall.server.io.api.InputStream;
 import atunstall.server.io.api.OutputStream;
 import atunstall.server.io.api.ParsableByteBuffer;
@@ -24,11 +26,80 @@ public interface ArrayStreams {
 
     /**
      * Creates a dynamic-size appendable parsable byte buffer.
+     * The buffer cannot hold more than {@link Integer#MAX_VALUE} bytes, so {@link #createSegmentedByteBuffer(int)} should be used for larger data.
      * @param length The size of the buffer.
      * @return The created buffer.
      */
     AppendableParsableByteBuffer createByteBuffer(int length);
 
+    /**
+     * Creates a dynamic-size appendable parsable byte buffer stored outside of the Java heap.
+     * This is preferred for buffers that are read into directly by channels.
+     * @param length The size of the buffer.
+     * @return The created buffer.
+     */
+    AppendableParsableByteBuffer createDirectByteBuffer(int length);
+
+    /**
+     * Creates an appendable parsable byte buffer stored as a list of chunks.
+     * Unlike the buffer returned by {@link #createByteBuffer(int)}, its size is not limited to {@link Integer#MAX_VALUE} bytes, appending to it never copies the bytes it already contains, and consumed chunks are released as soon as the backup is updated.
+     * @param chunkSize The size of each chunk.
+     * @return The created buffer.
+     */
+    AppendableParsableByteBuffer createSegmentedByteBuffer(int chunkSize);
+
+    /**
+     * Creates a parsable byte buffer backed by the remaining bytes of the given NIO buffer.
+     * The bytes are not copied, so changes made to the given buffer are reflected in the created buffer.
+     * If the given buffer is read-only, its remaining bytes are copied the first time the created buffer needs to modify them.
+     * @param buffer The buffer containing the bytes to parse.
+     * @return The created buffer.
+     */
+    ParsableByteBuffer createByteBuffer(java.nio.ByteBuffer buffer);
+
+    /**
+     * Creates a pattern that can be searched for in parsable byte buffers.
+     * The given sequence is copied, so later changes to the array do not affect the pattern.
+     * @param sequence The byte sequence to search for.
+     * @return The created pattern.
+     */
+    BytePattern createPattern(byte[] sequence);
+
+    /**
+     * Creates a reader that decodes primitives from the given buffer.
+     * The reader can be attached to other buffers afterwards, so decoders should create a single reader and reuse it.
+     * @param buffer The buffer to read from.
+     * @return The created reader.
+     */
+    ByteReader createReader(ParsableByteBuffer buffer);
+
+    /**
+     * Acquires a byte array from this service's buffer pool.
+     * The contents of the returned array are undefined and its length may be greater than requested.
+     * @param length The minimum length of the array.
+     * @return The acquired array.
+     */
+    byte[] acquire(int length);
+
+    /**
+     * Returns a byte array acquired using {@link #acquire(int)} to this service's buffer pool.
+     * The array must not be used by the caller once it has been released.
+     * @param array The array to release.
+     */
+    void release(byte[] array);
+
+    /**
+     * Returns the statistics of the pool used to allocate heap buffers.
+     * @return The heap buffer pool statistics.
+     */
+    PoolStatistics getPoolStatistics();
+
+    /**
+     * Returns the statistics of the pool used to allocate direct buffers.
+     * @return The direct buffer pool statistics.
+     */
+    PoolStatistics getDirectPoolStatistics();
+
     /**
      * Creates a partition of the given byte buffer.
      * {@link ByteBuffer#partition(long, long)} should be used instead if you're a consumer of the byte buffer.
@@ -71,8 +142,21 @@ public interface ArrayStreams {
 
     /**
      * Wraps the given asynchronous output stream to a Java output stream.
+     * This is equivalent to {@code wrap(stream, 8192)}.
+     * @param stream The stream to wrap.
+     * @return The wrapped stream.
+     */
+    default java.io.OutputStream wrap(OutputStream stream) {
+        return wrap(stream, 8192);
+    }
+
+    /**
+     * Wraps the given asynchronous output stream to a Java output stream that combines writes into batches of the given size.
+     * Full batches are passed to the asynchronous stream on another thread while the next batch is written, so write errors may only be reported by a later call.
+     * Flushing the returned stream waits until every batch has been accepted.
      * @param stream The stream to wrap.
+     * @param bufferSize The size of each batch.
      * @return The wrapped stream.
      */
-    java.io.OutputStream wrap(OutputStream stream);
+    java.io.OutputStream wrap(OutputStream stream, int bufferSize);
 }
@@ -24,4 +24,20 @@ public interface HandledInputStream extends InputStream {
      * @return The number of queued consumers.
      */
     int consumerCount();
+
+    /**
+     * Checks whether the source of this stream should read more data into the given buffer.
+     * This is the case if the buffer is below the watermarks set by {@link #setWatermarks(long, long)}, or if a consumer is waiting for more data.
+     * @param buffer The buffer that is read into.
+     * @return True if more data should be read, false if reading should be paused using {@link #pause(Runnable)}.
+     */
+    boolean hasDemand(ParsableByteBuffer buffer);
+
+    /**
+     * Pauses reading until the consumers may be able to make progress again, which is when a consumer is queued or the watermarks are changed.
+     * The given task is then ran once on the thread that caused the change, so it should only schedule the actual consumption and reading.
+     * If such a change happened during the last call to {@link #consumeSafe(AppendableParsableByteBuffer)}, the task is ran immediately.
+     * @param resume The task that resumes consuming and reading.
+     */
+    void pause(Runnable resume);
 }
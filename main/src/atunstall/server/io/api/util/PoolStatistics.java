@@ -0,0 +1,30 @@
+package atunstall.server.io.api.util;
+
+/**
+ * Statistics about the buffers allocated by a buffer pool.
+ */
+public interface PoolStatistics {
+    /**
+     * Returns the number of buffers that were served from the pool.
+     * @return The number of hits.
+     */
+    long hits();
+
+    /**
+     * Returns the number of buffers that had to be allocated because the pool had no suitable buffer.
+     * @return The number of misses.
+     */
+    long misses();
+
+    /**
+     * Returns the number of buffers that were returned to the pool and kept for later use.
+     * @return The number of recycled buffers.
+     */
+    long recycled();
+
+    /**
+     * Returns the number of buffers that were returned to the pool but discarded, either because the pool was full or because the buffer did not fit any size class.
+     * @return The number of discarded buffers.
+     */
+    long discarded();
+}
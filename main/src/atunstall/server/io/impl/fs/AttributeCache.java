@@ -0,0 +1,131 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.core.api.logging.Level;
+import atunstall.server.core.api.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads file attribute snapshots that stay valid until their time to live elapses or their directory changes.
+ * The directory of every file read is registered with a watch service, which invalidates every snapshot of that directory whenever an event is received.
+ * Directories that cannot be watched, or that exceed the watch limit, rely on the time to live alone.
+ */
+class AttributeCache {
+    private final Logger logger;
+    private final ThreadFactory threadFactory;
+    private final long ttl;
+    private final int maxWatches;
+    private final ConcurrentMap<Path, Watch> watches;
+    private volatile WatchService service;
+
+    AttributeCache(Logger logger, ThreadFactory threadFactory, long ttl, TimeUnit unit, int maxWatches) {
+        this.logger = logger;
+        this.threadFactory = threadFactory;
+        this.ttl = unit.toNanos(ttl);
+        this.maxWatches = maxWatches;
+        watches = new ConcurrentHashMap<>();
+    }
+
+    FileAttributes read(Path path) {
+        Watch watch = ttl > 0L ? watch(path.getParent()) : null;
+        // The generation is read before the attributes, so that a change racing with the read invalidates the snapshot
+        long generation = watch != null ? watch.getGeneration() : 0L;
+        return FileAttributes.read(path, System.nanoTime() + ttl, watch, generation);
+    }
+
+    private Watch watch(Path directory) {
+        if (directory == null) {
+            return null;
+        }
+        Watch watch = watches.get(directory);
+        if (watch != null && watch.isUsable()) {
+            return watch;
+        } else if (watch == null && watches.size() >= maxWatches) {
+            return null;
+        }
+        return watches.compute(directory, (d, current) -> current != null && current.isUsable() ? current : register(d));
+    }
+
+    private Watch register(Path directory) {
+        try {
+            return new Watch(directory.register(getService(), StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY));
+        } catch (IOException | RuntimeException e) {
+            // Not retried until the unwatched entry expires, so that missing directories are not registered on every read
+            return new Watch(System.nanoTime() + ttl);
+        }
+    }
+
+    private WatchService getService() throws IOException {
+        WatchService service = this.service;
+        if (service == null) {
+            synchronized (this) {
+                service = this.service;
+                if (service == null) {
+                    this.service = service = FileSystems.getDefault().newWatchService();
+                    Thread thread = threadFactory.newThread(this::run);
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+        }
+        return service;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Watch watch = watches.get((Path) key.watchable());
+                key.pollEvents();
+                boolean valid = key.reset();
+                if (watch != null && watch.key == key) {
+                    if (!valid) {
+                        watch.valid = false;
+                        watches.remove(key.watchable(), watch);
+                    }
+                    watch.generation++;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.log(Level.DEBUG, "Stopped watching directories");
+        }
+    }
+
+    static class Watch {
+        private final WatchKey key;
+        private final long retry;
+        private volatile boolean valid;
+        private volatile long generation;
+
+        private Watch(WatchKey key) {
+            this.key = key;
+            retry = 0L;
+            valid = true;
+        }
+
+        private Watch(long retry) {
+            key = null;
+            this.retry = retry;
+            valid = false;
+        }
+
+        long getGeneration() {
+            return generation;
+        }
+
+        private boolean isUsable() {
+            return key != null ? valid : System.nanoTime() - retry < 0L;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package atunstall.server.io.impl.fs;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append-only content of an in-memory file, stored in fixed-size chunks so that appending never copies a full chunk.
+ * A single writer appends at a time, while any number of readers read without locking.
+ * Bytes are written before the size that covers them is published, and the chunks are replaced rather than modified when the last one grows, so readers only ever see complete bytes.
+ */
+class ChunkedContent {
+    private static final int MIN_CHUNK = 256;
+
+    private final int chunkSize;
+    private volatile byte[][] chunks;
+    private volatile long size;
+
+    ChunkedContent(int chunkSize) {
+        this.chunkSize = chunkSize;
+        chunks = new byte[0][];
+        size = 0L;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    synchronized void append(byte[] bytes, int offset, int count) {
+        long size = this.size;
+        while (count > 0) {
+            byte[] chunk = reserve(size);
+            int position = (int) (size % chunkSize);
+            int written = Math.min(count, chunk.length - position);
+            System.arraycopy(bytes, offset, chunk, position, written);
+            offset += written;
+            count -= written;
+            size += written;
+        }
+        this.size = size;
+    }
+
+    synchronized void append(ByteBuffer bytes) {
+        long size = this.size;
+        while (bytes.hasRemaining()) {
+            byte[] chunk = reserve(size);
+            int position = (int) (size % chunkSize);
+            int written = Math.min(bytes.remaining(), chunk.length - position);
+            bytes.get(chunk, position, written);
+            size += written;
+        }
+        this.size = size;
+    }
+
+    /**
+     * Returns a read-only view of the bytes from the given position to the end of its chunk, without copying them.
+     * @param position The position of the first byte.
+     * @param count The maximum number of bytes in the view.
+     * @return The view, which is empty if the position is at or after the end of the content.
+     */
+    ByteBuffer slice(long position, long count) {
+        long size = this.size;
+        byte[][] chunks = this.chunks;
+        if (position >= size) {
+            return ByteBuffer.allocate(0);
+        }
+        int offset = (int) (position % chunkSize);
+        int length = (int) Math.min(Math.min(count, size - position), chunkSize - offset);
+        return ByteBuffer.wrap(chunks[(int) (position / chunkSize)], offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies bytes starting at the given position into the given buffer, until it is full or the end of the content is reached.
+     * @param position The position of the first byte to copy.
+     * @param target The buffer to copy the bytes to.
+     * @return The number of bytes copied, or -1 if the position is at or after the end of the content.
+     */
+    int read(long position, ByteBuffer target) {
+        if (position >= size) {
+            return -1;
+        }
+        int start = target.position();
+        ByteBuffer slice;
+        while (target.hasRemaining() && (slice = slice(position, target.remaining())).hasRemaining()) {
+            position += slice.remaining();
+            target.put(slice);
+        }
+        return target.position() - start;
+    }
+
+    private byte[] reserve(long size) {
+        int index = (int) (size / chunkSize);
+        int position = (int) (size % chunkSize);
+        byte[][] chunks = this.chunks;
+        if (index < chunks.length && position < chunks[index].length) {
+            return chunks[index];
+        }
+        // The last chunk doubles until it reaches the chunk size, so that small files stay small
+        chunks = Arrays.copyOf(chunks, index + 1);
+        chunks[index] = chunks[index] == null ? new byte[Math.min(MIN_CHUNK, chunkSize)]
+                : Arrays.copyOf(chunks[index], Math.min(chunks[index].length << 1, chunkSize));
+        this.chunks = chunks;
+        return chunks[index];
+    }
+}
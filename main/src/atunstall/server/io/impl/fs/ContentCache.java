@@ -0,0 +1,229 @@
+package atunstall.server.io.impl.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Size-bounded cache of the content of small, frequently read files.
+ * Paths are spread over segments with their own lock and share of the budget, so that readers of different files rarely contend.
+ * Within a segment, entries are kept in least recently used order, and a file only replaces the least recently used entries if it is read more frequently than them, as estimated by a count-min sketch.
+ * An entry is only served while the file's attributes still have the size and modification time it was read with.
+ */
+class ContentCache {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final long budget;
+    private final long maxSize;
+    private final Segment[] segments;
+
+    ContentCache(long budget, long maxSize) {
+        this.budget = budget;
+        this.maxSize = Math.min(maxSize, budget);
+        // Every segment must be able to hold the largest cached file
+        int count = budget > 0L ? Integer.highestOneBit((int) Math.min(MAX_SEGMENTS, Math.max(1L, budget / Math.max(1L, this.maxSize)))) : 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(budget / count);
+        }
+    }
+
+    boolean isEnabled() {
+        return budget > 0L;
+    }
+
+    /**
+     * Returns the cached content of the given file, reading it into the cache if it is read frequently enough.
+     * @param path The path of the file.
+     * @param attributes The current attributes of the file.
+     * @return A read-only view of the content, or {@code null} if it is not cached.
+     */
+    ByteBuffer get(Path path, FileAttributes attributes) {
+        Segment segment = segmentFor(path);
+        synchronized (segment) {
+            segment.sketch.increment(path);
+            if (!attributes.exists() || attributes.size() > maxSize) {
+                segment.remove(path);
+                return null;
+            }
+            Entry entry = segment.entries.get(path);
+            if (entry != null && entry.matches(attributes)) {
+                return entry.content.duplicate();
+            } else if (entry != null) {
+                segment.remove(path);
+            }
+            // Files read only once are not worth the read into the cache, and neither are files that would not be admitted
+            if (segment.sketch.frequency(path) < 2 || !segment.admit(path, attributes.size(), false)) {
+                return null;
+            }
+        }
+        ByteBuffer content = read(path, attributes.size());
+        if (content == null) {
+            return null;
+        }
+        synchronized (segment) {
+            segment.remove(path);
+            if (!segment.admit(path, content.capacity(), true)) {
+                // Already read, so it is still served once
+                return content;
+            }
+            segment.entries.put(path, new Entry(content, attributes.size(), attributes.lastModified()));
+            segment.used += content.capacity();
+        }
+        return content.duplicate();
+    }
+
+    void invalidate(Path path) {
+        Segment segment = segmentFor(path);
+        synchronized (segment) {
+            segment.remove(path);
+        }
+    }
+
+    private Segment segmentFor(Path path) {
+        return segments[spread(path.hashCode()) & segments.length - 1];
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xED5AD4BB;
+        return hash ^ hash >>> 11;
+    }
+
+    private static ByteBuffer read(Path path, long size) {
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (content.hasRemaining()) {
+                if (channel.read(content, content.position()) < 0) {
+                    // Truncated since its attributes were read, so it is left for the watch service to invalidate
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to read file into the cache", e);
+        }
+        return content.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Share of the cache guarded by its own lock, which must be held to use any of its fields.
+     */
+    private static class Segment {
+        private final long budget;
+        private final Map<Path, Entry> entries;
+        private final FrequencySketch sketch;
+        private long used;
+
+        private Segment(long budget) {
+            this.budget = budget;
+            entries = new LinkedHashMap<>(16, 0.75f, true);
+            sketch = new FrequencySketch(budget > 0L ? (int) Math.min(1 << 20, Math.max(16L, budget / 4096L)) : 1);
+            used = 0L;
+        }
+
+        /**
+         * Checks whether a file of the given size fits, and evicts the entries making room for it if requested.
+         */
+        private boolean admit(Path path, long size, boolean evict) {
+            int frequency = sketch.frequency(path);
+            Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+            long freed = 0L;
+            // Only evicts once the victims are known to be less valuable than the candidate
+            while (used - freed + size > budget) {
+                if (!iterator.hasNext()) {
+                    return false;
+                }
+                Map.Entry<Path, Entry> victim = iterator.next();
+                if (sketch.frequency(victim.getKey()) >= frequency) {
+                    return false;
+                }
+                freed += victim.getValue().content.capacity();
+            }
+            while (evict && freed > 0L) {
+                Map.Entry<Path, Entry> victim = entries.entrySet().iterator().next();
+                freed -= victim.getValue().content.capacity();
+                remove(victim.getKey());
+            }
+            return true;
+        }
+
+        private void remove(Path path) {
+            Entry entry = entries.remove(path);
+            if (entry != null) {
+                used -= entry.content.capacity();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final ByteBuffer content;
+        private final long size;
+        private final FileTime modified;
+
+        private Entry(ByteBuffer content, long size, FileTime modified) {
+            this.content = content;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private boolean matches(FileAttributes attributes) {
+            return attributes.size() == size && Objects.equals(attributes.lastModified(), modified);
+        }
+    }
+
+    /**
+     * Count-min sketch of counters saturating at 15, which are halved periodically so that old reads are forgotten.
+     */
+    private static class FrequencySketch {
+        private static final int[] SEEDS = {0x97CB3127, 0xB4B82E39, 0x3C6EF372, 0x7F4A7C15};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int size) {
+            counters = new byte[Integer.highestOneBit(Math.max(size, 1)) << 1];
+            mask = counters.length - 1;
+            sampleSize = counters.length * 10;
+        }
+
+        private void increment(Object key) {
+            int hash = spread(key.hashCode());
+            for (int seed : SEEDS) {
+                int index = indexOf(hash, seed);
+                if (counters[index] < 15) {
+                    counters[index]++;
+                }
+            }
+            if (++additions == sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int seed : SEEDS) {
+                frequency = Math.min(frequency, counters[indexOf(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int seed) {
+            int index = hash * seed;
+            return (index ^ index >>> 16) & mask;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package atunstall.server.io.impl.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Snapshot of the attributes of a file, read with a single call to {@link Files#readAttributes(Path, Class, java.nio.file.LinkOption...)}.
+ * Access checks and content type probes need separate system calls, so they are only made the first time they are asked for.
+ */
+class FileAttributes {
+    private final Path path;
+    private final BasicFileAttributes attributes;
+    private final IOException failure;
+    private final long expiry;
+    private final AttributeCache.Watch watch;
+    private final long generation;
+    private volatile Boolean readable;
+    private volatile Boolean writable;
+    private volatile Optional<String> mimeType;
+
+    private FileAttributes(Path path, BasicFileAttributes attributes, IOException failure, long expiry, AttributeCache.Watch watch, long generation) {
+        this.path = path;
+        this.attributes = attributes;
+        this.failure = failure;
+        this.expiry = expiry;
+        this.watch = watch;
+        this.generation = generation;
+    }
+
+    static FileAttributes read(Path path, long expiry, AttributeCache.Watch watch, long generation) {
+        try {
+            return new FileAttributes(path, Files.readAttributes(path, BasicFileAttributes.class), null, expiry, watch, generation);
+        } catch (IOException e) {
+            return new FileAttributes(path, null, e, expiry, watch, generation);
+        }
+    }
+
+    boolean isValid() {
+        return System.nanoTime() - expiry < 0L && (watch == null || watch.getGeneration() == generation);
+    }
+
+    boolean exists() {
+        return attributes != null;
+    }
+
+    boolean notExists() {
+        // Like Files.notExists, a file whose existence cannot be determined neither exists nor does not exist
+        return failure instanceof NoSuchFileException;
+    }
+
+    boolean canRead() {
+        Boolean readable = this.readable;
+        if (readable == null) {
+            this.readable = readable = exists() && Files.isReadable(path);
+        }
+        return readable;
+    }
+
+    boolean canWrite() {
+        Boolean writable = this.writable;
+        if (writable == null) {
+            this.writable = writable = exists() && Files.isWritable(path);
+        }
+        return writable;
+    }
+
+    Optional<String> getMimeType(Supplier<Optional<String>> probe) {
+        Optional<String> mimeType = this.mimeType;
+        if (mimeType == null) {
+            this.mimeType = mimeType = probe.get();
+        }
+        return mimeType;
+    }
+
+    /**
+     * Sniffs the content type from the start of the file if it is not yet known, so that probing it later needs no more reads.
+     * @param head The first bytes of the file.
+     * @param length The number of bytes in the array that were read from the file.
+     */
+    void offerHead(byte[] head, int length) {
+        if (mimeType == null) {
+            String sniffed = MimeTypes.sniff(head, length);
+            if (sniffed != null) {
+                mimeType = Optional.of(sniffed);
+            }
+        }
+    }
+
+    FileTime lastModified() {
+        return attributes != null ? attributes.lastModifiedTime() : null;
+    }
+
+    long size() {
+        if (attributes == null) {
+            throw new UncheckedIOException("failed to get file size", failure);
+        }
+        return attributes.size();
+    }
+}
@@ -0,0 +1,88 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.core.api.logging.Level;
+import atunstall.server.core.api.logging.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the threads of a file system module, named after its thread group.
+ * Every file system reads its execution mode and thread count from the same system properties.
+ */
+class FileSystemThreads implements ThreadFactory {
+    private static final String MODE_PROPERTY = "atunstall.server.io.fs.executor";
+    private static final String THREADS_PROPERTY = "atunstall.server.io.fs.threads";
+
+    private final ThreadGroup group;
+    private final Logger logger;
+    private final AtomicLong threadCount;
+
+    FileSystemThreads(ThreadGroup group, Logger logger) {
+        this.group = group;
+        this.logger = logger;
+        threadCount = new AtomicLong(0L);
+    }
+
+    static ExecutionMode mode() {
+        return ExecutionMode.valueOf(System.getProperty(MODE_PROPERTY, ExecutionMode.VIRTUAL.name()).toUpperCase());
+    }
+
+    static int threads() {
+        return Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    ExecutorService newExecutor(ExecutionMode mode, int threads) {
+        return mode == ExecutionMode.VIRTUAL ? newVirtualExecutor(threads) : newPlatformExecutor(threads);
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(group, r, group.getName() + "-" + threadCount.getAndIncrement());
+        thread.setDaemon(true);
+        logger.log(Level.DEBUG, "Creating thread " + thread.getName());
+        return thread;
+    }
+
+    private ExecutorService newVirtualExecutor(int threads) {
+        // Virtual threads are looked up reflectively so that the module still runs on releases without them
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class, long.class).invoke(virtual, group.getName() + "-virtual-", 0L);
+            ThreadFactory factory = (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(Level.DEBUG, "Virtual threads are unavailable, falling back to a pool of " + threads + " platform threads");
+            return newPlatformExecutor(threads);
+        }
+    }
+
+    private ExecutorService newPlatformExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), this);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Determines which threads run stream setup, file channel completions and consumers.
+     * The mode is read from the {@code atunstall.server.io.fs.executor} system property when the module is constructed.
+     */
+    enum ExecutionMode {
+        /**
+         * Runs every task on its own virtual thread, so that blocking consumers only park.
+         * Falls back to {@link #PLATFORM} if virtual threads are unavailable.
+         */
+        VIRTUAL,
+
+        /**
+         * Runs tasks on a bounded pool of platform threads, sized by the {@code atunstall.server.io.fs.threads} system property.
+         */
+        PLATFORM
+    }
+}
@@ -0,0 +1,91 @@
+package atunstall.server.io.impl.fs;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Concurrent cache of weakly referenced handles, so that every caller asking for the same key shares one handle while it is in use.
+ * Entries whose handles have been collected are purged through a reference queue whenever a handle is created.
+ * The capacity is a soft limit: once it is exceeded, the entries whose handles have been cleared but not yet enqueued are dropped too.
+ * Entries of live handles are never dropped, since callers would otherwise end up with distinct handles for the same key.
+ * @param <K> The type of key identifying handles.
+ * @param <V> The type of handle.
+ */
+class HandleCache<K, V> {
+    private final ConcurrentMap<K, Entry<K, V>> entries;
+    private final ReferenceQueue<V> queue;
+    private final Function<? super K, ? extends V> factory;
+    private final int capacity;
+    private int threshold;
+
+    HandleCache(Function<? super K, ? extends V> factory, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        entries = new ConcurrentHashMap<>();
+        queue = new ReferenceQueue<>();
+        this.factory = factory;
+        this.capacity = capacity;
+        threshold = capacity;
+    }
+
+    V get(K key) {
+        // Hot path, which only reads the map
+        Entry<K, V> entry = entries.get(key);
+        V value = entry != null ? entry.get() : null;
+        if (value != null) {
+            return value;
+        }
+        expunge();
+        Object[] created = new Object[1];
+        entries.compute(key, (k, current) -> {
+            V existing = current != null ? current.get() : null;
+            if (existing != null) {
+                created[0] = existing;
+                return current;
+            }
+            V handle = factory.apply(k);
+            created[0] = handle;
+            return new Entry<>(k, handle, queue);
+        });
+        trim();
+        @SuppressWarnings("unchecked") V result = (V) created[0];
+        return result;
+    }
+
+    private void expunge() {
+        Reference<? extends V> reference;
+        while ((reference = queue.poll()) != null) {
+            Entry<?, ?> entry = (Entry<?, ?>) reference;
+            // Only removes the entry if it has not already been replaced by a live one
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private synchronized void trim() {
+        if (entries.size() <= threshold) {
+            return;
+        }
+        for (Entry<K, V> entry : entries.values()) {
+            if (entry.get() == null) {
+                // Removing through the iterator would also drop a live entry that replaced this one meanwhile
+                entries.remove(entry.key, entry);
+            }
+        }
+        // Live handles may keep the cache above its capacity, so it is not scanned again until it has doubled
+        threshold = Math.max(capacity, entries.size() << 1);
+    }
+
+    private static class Entry<K, V> extends WeakReference<V> {
+        private final K key;
+
+        private Entry(K key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
@@ -1,29 +1,50 @@
 package atunstall.server.io.impl.fs;
 
 import atunstall.server.core.api.logging.Level;
+import atunstall.server.io.api.BufferConsumer;
+import atunstall.server.io.api.ByteRangeVisitor;
 import atunstall.server.io.api.InputStream;
 import atunstall.server.io.api.OutputStream;
 import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.fs.Durability;
 import atunstall.server.io.api.fs.File;
 import atunstall.server.io.api.fs.FileSystem;
 import atunstall.server.io.api.util.AppendableParsableByteBuffer;
 import atunstall.server.io.impl.util.HandledInputStreamImpl;
+import atunstall.server.io.impl.util.SharedInputStream;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class JavaFile implements File<Path> {
+    private static final int COALESCE_SIZE = 8192;
+    private static final long COALESCE_DELAY = 50L;
+    private static final long MAP_WINDOW = 1L << 30;
+    private static final int TRANSFER_SIZE = 1 << 16;
+    private static final int MIN_CHUNK = 4096;
+    private static final int MAX_CHUNK = 4 << 20;
+
     private final JavaFileSystemImpl fs;
     private final Path path;
+    private volatile FileAttributes attributes;
 
     JavaFile(JavaFileSystemImpl fs, Path path) {
         this.fs = fs;
@@ -36,37 +57,170 @@ public class JavaFile implements File<Path> {
     }
 
     @Override
-    public InputStream newInputStream() {
-        return new InputStreamImpl();
+    public InputStream newInputStream(long offset, long length) {
+        if (offset < 0L || length < 0L) {
+            throw new IllegalArgumentException("range is negative");
+        }
+        ByteBuffer content = fs.getContentCache().isEnabled() ? fs.getContentCache().get(path, getAttributes()) : null;
+        if (content != null) {
+            int start = (int) Math.min(offset, content.limit());
+            return new SharedInputStream(fs.getLogger(), content.slice(start, (int) Math.min(length, content.limit() - start)), fs.getExecutor());
+        }
+        return new InputStreamImpl(offset, length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length);
     }
 
     @Override
-    public OutputStream newOutputStream() {
-        return new OutputStreamImpl();
+    public CompletionStage<List<atunstall.server.io.api.ByteBuffer>> read(long[] positions, int[] lengths) {
+        if (positions.length != lengths.length) {
+            throw new IllegalArgumentException("positions and lengths differ in length");
+        }
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] < 0L || lengths[i] < 0) {
+                throw new IllegalArgumentException("range is negative");
+            }
+        }
+        AsynchronousFileChannel channel;
+        try {
+            channel = AsynchronousFileChannel.open(path, Set.of(StandardOpenOption.READ), fs.getExecutor());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException("failed to open file channel", e));
+        }
+        // Every range is read concurrently through the same channel, which is closed once they have all completed
+        RangeRead[] reads = new RangeRead[positions.length];
+        for (int i = 0; i < reads.length; i++) {
+            reads[i] = new RangeRead(channel, positions[i], lengths[i]).start();
+        }
+        return CompletableFuture.allOf(reads).whenComplete((ignored, exc) -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                fs.getLogger().log(Level.ERROR, "Failed to close channel", e);
+            }
+        }).thenApply(ignored -> {
+            List<atunstall.server.io.api.ByteBuffer> buffers = new ArrayList<>(reads.length);
+            for (RangeRead read : reads) {
+                buffers.add(fs.getArrayStreams().createByteBuffer(read.target.flip()));
+            }
+            return buffers;
+        });
+    }
+
+    @Override
+    public OutputStream newOutputStream(Durability durability) {
+        return new OutputStreamImpl(durability);
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, long offset, long count) {
+        if (offset < 0L || count < 0L) {
+            throw new IllegalArgumentException("range is negative");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long transferred = 0L;
+            if (target instanceof FileChannel || target instanceof SelectableChannel) {
+                // Channels the JDK can transfer to with sendfile or copy_file_range
+                long result;
+                while (transferred < count && (result = channel.transferTo(offset + transferred, count - transferred, target)) > 0L) {
+                    transferred += result;
+                }
+                return transferred;
+            }
+            byte[] array = fs.getArrayStreams().acquire(TRANSFER_SIZE);
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(array);
+                while (transferred < count) {
+                    buffer.clear().limit((int) Math.min(array.length, count - transferred));
+                    if (channel.read(buffer, offset + transferred) <= 0) {
+                        break;
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        if (target.write(buffer) == 0) {
+                            return transferred + buffer.position();
+                        }
+                    }
+                    transferred += buffer.position();
+                }
+            } finally {
+                fs.getArrayStreams().release(array);
+            }
+            return transferred;
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to transfer file", e);
+        }
+    }
+
+    @Override
+    public ParsableByteBuffer map(long position, long count) {
+        if (position < 0L || count < 0L) {
+            throw new IllegalArgumentException("range is negative");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (position + count > channel.size()) {
+                throw new IllegalArgumentException("range exceeds the file size");
+            }
+            // A mapped buffer is indexed by int, so larger ranges are split into windows and concatenated
+            List<ParsableByteBuffer> windows = new ArrayList<>();
+            for (long offset = 0L; offset < count || windows.isEmpty(); offset += MAP_WINDOW) {
+                windows.add(fs.getArrayStreams().createByteBuffer(channel.map(FileChannel.MapMode.READ_ONLY, position + offset, Math.min(MAP_WINDOW, count - offset))));
+            }
+            return fs.getArrayStreams().concatenate(windows);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to map file", e);
+        }
     }
 
     @Override
     public boolean exists() {
-        return Files.exists(path);
+        return getAttributes().exists();
     }
 
     @Override
     public boolean notExists() {
-        return Files.notExists(path);
+        return getAttributes().notExists();
     }
 
     @Override
     public boolean canRead() {
-        return Files.isReadable(path);
+        return getAttributes().canRead();
     }
 
     @Override
     public boolean canWrite() {
-        return Files.isWritable(path);
+        return getAttributes().canWrite();
     }
 
     @Override
     public Optional<String> getMimeType() {
+        // Known extensions need no file system access at all
+        String type = MimeTypes.fromExtension(path);
+        return type != null ? Optional.of(type) : getAttributes().getMimeType(this::probeMimeType);
+    }
+
+    @Override
+    public long getSize() {
+        return getAttributes().size();
+    }
+
+    private Optional<String> probeMimeType() {
+        if (exists()) {
+            byte[] head = new byte[MimeTypes.SNIFF_LENGTH];
+            ByteBuffer target = ByteBuffer.wrap(head);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // Reads may return fewer bytes than requested before the end of the file
+                while (target.hasRemaining()) {
+                    if (channel.read(target, target.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to probe content type", e);
+            }
+            String sniffed = MimeTypes.sniff(head, target.position());
+            if (sniffed != null) {
+                return Optional.of(sniffed);
+            }
+        }
         try {
             return Optional.ofNullable(Files.probeContentType(path));
         } catch (IOException e) {
@@ -74,69 +228,205 @@ public class JavaFile implements File<Path> {
         }
     }
 
-    @Override
-    public long getSize() {
-        try {
-            return Files.size(path);
-        } catch (IOException e) {
-            throw new UncheckedIOException("failed to get file size", e);
+    private FileAttributes getAttributes() {
+        FileAttributes attributes = this.attributes;
+        if (attributes == null || !attributes.isValid()) {
+            this.attributes = attributes = fs.getAttributeCache().read(path);
         }
+        return attributes;
     }
 
-    private class OutputStreamImpl implements OutputStream {
-        private BufferedOutputStream stream;
-        private byte[] buffer;
+    private class OutputStreamImpl implements OutputStream, ByteRangeVisitor {
+        private final FileChannel channel;
+        private final Durability durability;
+        private final byte[] array;
+        private final ByteBuffer pending;
+        private final ByteBuffer[] gather;
+        private boolean scheduled;
+        private boolean closed;
 
-        private OutputStreamImpl() {
+        private OutputStreamImpl(Durability durability) {
             try {
-                stream = new BufferedOutputStream(Files.newOutputStream(path));
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                attributes = null;
+                fs.getContentCache().invalidate(path);
             } catch (IOException e) {
                 throw new RuntimeException("exception opening the stream", e);
             }
-            buffer = new byte[4096];
+            this.durability = durability;
+            array = fs.getArrayStreams().acquire(COALESCE_SIZE);
+            pending = ByteBuffer.wrap(array, 0, COALESCE_SIZE);
+            gather = new ByteBuffer[2];
         }
 
         @Override
-        public void close() throws Exception {
-            stream.close();
+        public synchronized void close() throws Exception {
+            if (closed) return;
+            try {
+                writePending();
+                if (durability == Durability.CLOSE) {
+                    channel.force(true);
+                }
+            } finally {
+                closed = true;
+                channel.close();
+                fs.getArrayStreams().release(array);
+            }
+        }
+
+        @Override
+        public synchronized void accept(atunstall.server.io.api.ByteBuffer byteBuffer) {
+            if (closed) {
+                throw new IllegalStateException("stream closed");
+            }
+            byteBuffer.visit(0L, byteBuffer.count(), this);
+        }
+
+        @Override
+        public synchronized void accept(File<?> file, long offset, long count) {
+            if (closed) {
+                throw new IllegalStateException("stream closed");
+            }
+            writePending();
+            attributes = null;
+            file.transferTo(channel, offset, count);
+            if (durability == Durability.BATCH) {
+                force();
+            }
+        }
+
+        @Override
+        public void visit(byte[] bytes, int offset, int count) {
+            visit(ByteBuffer.wrap(bytes, offset, count));
         }
 
         @Override
-        public void accept(atunstall.server.io.api.ByteBuffer byteBuffer) {
-            long index = 0;
-            long count = byteBuffer.count();
+        public void visit(ByteBuffer bytes) {
+            if (bytes.remaining() <= pending.remaining()) {
+                pending.put(bytes);
+                if (!scheduled) {
+                    scheduled = true;
+                    CompletableFuture.runAsync(this::writeLater, CompletableFuture.delayedExecutor(COALESCE_DELAY, TimeUnit.MILLISECONDS, fs.getExecutor()));
+                }
+                return;
+            }
+            // Too large to combine, so the pending bytes and the range are written together straight from their storage
+            pending.flip();
+            gather[0] = pending;
+            gather[1] = bytes;
             try {
-                while (index < count) {
-                    int read = (int) Math.min(buffer.length, count - index);
-                    byteBuffer.get(index, buffer, 0, read);
-                    stream.write(buffer, 0, read);
-                    index += read;
+                write(gather);
+            } finally {
+                gather[1] = null;
+                pending.clear();
+            }
+        }
+
+        private synchronized void writeLater() {
+            if (closed) return;
+            try {
+                writePending();
+            } catch (UncheckedIOException e) {
+                fs.getLogger().log(Level.ERROR, "Failed to write to file", e);
+            }
+        }
+
+        private void writePending() {
+            scheduled = false;
+            if (pending.position() == 0) return;
+            pending.flip();
+            try {
+                write(pending);
+            } finally {
+                pending.clear();
+            }
+        }
+
+        private void write(ByteBuffer... buffers) {
+            // The watch service reports the change eventually, but this stream's writer expects to see it now
+            attributes = null;
+            try {
+                while (buffers[buffers.length - 1].hasRemaining()) {
+                    channel.write(buffers);
                 }
-                stream.flush();
             } catch (IOException e) {
-                throw new RuntimeException("failed to write to the stream", e);
+                throw new UncheckedIOException("failed to write to the stream", e);
+            }
+            if (durability == Durability.BATCH) {
+                force();
+            }
+        }
+
+        private void force() {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to write to the stream", e);
+            }
+        }
+    }
+
+    private class RangeRead extends CompletableFuture<Void> implements CompletionHandler<Integer, Void> {
+        private final AsynchronousFileChannel channel;
+        private final ByteBuffer target;
+        private long position;
+
+        private RangeRead(AsynchronousFileChannel channel, long position, int length) {
+            this.channel = channel;
+            this.position = position;
+            target = ByteBuffer.allocate(length);
+        }
+
+        private RangeRead start() {
+            completed(0, null);
+            return this;
+        }
+
+        @Override
+        public void completed(Integer result, Void attachment) {
+            position += result;
+            if (result < 0 || !target.hasRemaining()) {
+                complete(null);
+                return;
             }
+            // Reads may return fewer bytes than requested before the end of the file
+            channel.read(target, position, null, this);
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            completeExceptionally(exc);
         }
     }
 
     private class InputStreamImpl extends HandledInputStreamImpl implements InputStream {
         private AsynchronousFileChannel input;
         private AppendableParsableByteBuffer buffer;
-        private byte[] readBuffer;
-        private ByteBuffer readBufferWrapper;
+        private final AppendableParsableByteBuffer ahead;
+        private AppendableParsableByteBuffer target;
+        private final AtomicInteger parties;
         private long position;
+        private final long limit;
+        private long end;
+        private int chunk;
+        private int result;
+        private int lastRead;
 
-        private InputStreamImpl() {
-            super(null);
+        private InputStreamImpl(long offset, long limit) {
+            super(fs.getLogger(), null);
             try {
-                input = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+                input = AsynchronousFileChannel.open(path, Set.of(StandardOpenOption.READ), fs.getExecutor());
+                end = Math.min(input.size(), limit);
             } catch (IOException e) {
                 throw new UncheckedIOException("failed to open file channel", e);
             }
-            buffer = fs.getArrayStreams().createByteBuffer(4096);
-            readBufferWrapper = ByteBuffer.wrap(readBuffer = new byte[4096]);
-            position = 0L;
-            fs.getExecutor().execute(this::readFile);
+            parties = new AtomicInteger();
+            position = offset;
+            this.limit = limit;
+            chunk = (int) Math.max(MIN_CHUNK, Math.min(MAX_CHUNK / 16, Long.highestOneBit(Math.max(end - offset, 0L) / 16)));
+            buffer = fs.getArrayStreams().createDirectByteBuffer(chunk);
+            ahead = fs.getArrayStreams().createDirectByteBuffer(0);
+            fs.getExecutor().execute(() -> readFile(1));
         }
 
         @Override
@@ -150,15 +440,99 @@ public class JavaFile implements File<Path> {
         }
 
         @Override
-        public void queueConsumer(Consumer<? super ParsableByteBuffer> consumer) {
-            super.queueConsumer(consumer);
-            if (isClosed() && buffer.count() > 0L) {
-                fs.getExecutor().execute(this::consumeUntilEmpty);
+        public void queue(BufferConsumer consumer) {
+            super.queue(consumer);
+            if (isClosed()) {
+                fs.getExecutor().execute(this::drain);
+            }
+        }
+
+        /**
+         * Starts reading the next chunk.
+         * The chunk is only processed once the read and the given number of other parties have arrived, so that the consumers can run while the read is in flight.
+         * Such reads go to a separate chunk, because the consumers may move the buffered bytes around.
+         */
+        private void readFile(int parties) {
+            this.parties.set(parties);
+            target = parties > 1 ? ahead : buffer;
+            if (position >= limit) {
+                result = -1;
+                arrive();
+                return;
+            }
+            int count = (int) Math.min(Math.min(chunk, limit - position), Math.max(MIN_CHUNK, end - position));
+            input.read(target.reserve(count), position, null, new CompletionHandlerImpl());
+        }
+
+        private void arrive() {
+            if (parties.decrementAndGet() == 0) {
+                process();
             }
         }
 
-        private void readFile() {
-            input.read(readBufferWrapper, position, null, new CompletionHandlerImpl());
+        private void process() {
+            if (result < 0) {
+                ahead.release();
+                safeClose();
+                drain();
+                return;
+            }
+            lastRead = result;
+            commit();
+            if (position == 0L && lastRead > 0 && MimeTypes.fromExtension(path) == null) {
+                sniff();
+            }
+            position += lastRead;
+            if (isClosed()) {
+                drain();
+                return;
+            }
+            if (hasDemand(buffer)) {
+                // Read ahead while the consumers process the buffered bytes
+                readFile(2);
+                consume();
+                arrive();
+            } else {
+                consumeAndRead();
+            }
+        }
+
+        private synchronized void commit() {
+            target.commit(lastRead);
+            if (target == ahead) {
+                buffer.append(ahead);
+                ahead.release();
+            }
+        }
+
+        private void sniff() {
+            // The first chunk starts the buffer, so the content type can be sniffed without reading the file again
+            byte[] head = new byte[MimeTypes.SNIFF_LENGTH];
+            int length = (int) Math.min(head.length, buffer.count());
+            buffer.get(0L, head, 0, length);
+            getAttributes().offerHead(head, length);
+        }
+
+        private void consumeAndRead() {
+            if (isClosed()) {
+                return;
+            }
+            consume();
+            if (hasDemand(buffer)) {
+                readFile(1);
+            } else {
+                pause(() -> fs.getExecutor().execute(this::consumeAndRead));
+            }
+        }
+
+        private synchronized void consume() {
+            consumeSafe(buffer);
+            // Larger reads are only worth it while the consumers keep up with them
+            if (buffer.count() == 0L && lastRead == chunk) {
+                chunk = Math.min(chunk << 1, MAX_CHUNK);
+            } else if (buffer.count() >= chunk) {
+                chunk = Math.max(chunk >> 1, MIN_CHUNK);
+            }
         }
 
         private void safeClose() {
@@ -169,36 +543,24 @@ public class JavaFile implements File<Path> {
             }
         }
 
-        private void consumeUntilEmpty() {
-            consumeSafe(buffer);
-            if (buffer.count() > 0L && consumerCount() > 0) {
-                fs.getExecutor().execute(this::consumeUntilEmpty);
-            }
+        private void drain() {
+            drain(buffer, fs.getExecutor());
         }
 
         private class CompletionHandlerImpl implements CompletionHandler<Integer, Void> {
             @Override
             public void completed(Integer result, Void attachment) {
-                if (result == -1) {
-                    safeClose();
-                    consumeUntilEmpty();
-                    return;
-                }
-                buffer.append(readBuffer, 0, result);
-                position += result;
-                if (isClosed()) {
-                    consumeUntilEmpty();
-                    return;
-                }
-                consumeSafe(buffer);
-                input.read(readBufferWrapper, position, null, new CompletionHandlerImpl());
+                InputStreamImpl.this.result = result;
+                arrive();
             }
 
             @Override
             public void failed(Throwable exc, Void attachment) {
-                fs.getLogger().log(Level.ERROR, "Failed to read file", exc);
-                safeClose();
-                consumeUntilEmpty();
+                if (!(exc instanceof AsynchronousCloseException)) {
+                    fs.getLogger().log(Level.ERROR, "Failed to read file", exc);
+                }
+                result = -1;
+                arrive();
             }
         }
     }
@@ -2,53 +2,57 @@ package atunstall.server.io.impl.fs;
 
 import atunstall.server.core.api.Module;
 import atunstall.server.core.api.Version;
-import atunstall.server.core.api.logging.Level;
 import atunstall.server.core.api.logging.Logger;
 import atunstall.server.io.api.util.ArrayStreams;
 import atunstall.server.io.api.fs.File;
 import atunstall.server.io.api.fs.JavaFileSystem;
 
-import java.lang.ref.WeakReference;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Module
-public class JavaFileSystemImpl implements JavaFileSystem {
+public final class JavaFileSystemImpl implements JavaFileSystem {
     private static final ThreadGroup THREAD_GROUP = new ThreadGroup("IO-JavaFS");
+    private static final String HANDLES_PROPERTY = "atunstall.server.io.fs.handles";
+    private static final String ATTRIBUTES_TTL_PROPERTY = "atunstall.server.io.fs.attributes.ttl";
+    private static final String WATCHES_PROPERTY = "atunstall.server.io.fs.attributes.watches";
+    private static final String CONTENT_BUDGET_PROPERTY = "atunstall.server.io.fs.content.budget";
+    private static final String CONTENT_MAX_PROPERTY = "atunstall.server.io.fs.content.max";
     private final Logger logger;
-    private final Executor executor;
+    private final ExecutorService executor;
     private final ArrayStreams arrayStreams;
-    private final Map<Path, WeakReference<File<Path>>> cache;
-    private final AtomicLong threadCount;
+    private final HandleCache<Path, JavaFile> cache;
+    private final AttributeCache attributes;
+    private final ContentCache content;
 
     public JavaFileSystemImpl(@Version(major = 1, minor = 0) Logger logger, @Version(major = 1, minor = 0) ArrayStreams arrayStreams) {
+        this(logger, arrayStreams, FileSystemThreads.mode(), FileSystemThreads.threads());
+    }
+
+    JavaFileSystemImpl(Logger logger, ArrayStreams arrayStreams, FileSystemThreads.ExecutionMode mode, int threadCount) {
         this.logger = logger.getChild("Java FS");
-        this.executor = Executors.newCachedThreadPool(this::newThread);
         this.arrayStreams = arrayStreams;
-        cache = new HashMap<>();
-        threadCount = new AtomicLong(0L);
+        cache = new HandleCache<>(p -> new JavaFile(this, p), Integer.getInteger(HANDLES_PROPERTY, 1 << 16));
+        FileSystemThreads threads = new FileSystemThreads(THREAD_GROUP, this.logger);
+        attributes = new AttributeCache(this.logger, threads, Long.getLong(ATTRIBUTES_TTL_PROPERTY, 2000L), TimeUnit.MILLISECONDS,
+                Integer.getInteger(WATCHES_PROPERTY, 1024));
+        // Disabled unless given a budget, as it trades heap for fewer reads
+        content = new ContentCache(Long.getLong(CONTENT_BUDGET_PROPERTY, 0L), Long.getLong(CONTENT_MAX_PROPERTY, 1L << 18));
+        this.executor = threads.newExecutor(mode, threadCount);
     }
 
     @Override
     public File<? extends Path> getFile(Path path) {
-        File<Path> file = cache.containsKey(path) ? cache.get(path).get() : null;
-        if (file == null) {
-            file = new JavaFile(this, path);
-            cache.put(path, new WeakReference<>(file));
-        }
-        return file;
+        // Equivalent paths must share one handle
+        return cache.get(path.toAbsolutePath().normalize());
     }
 
-
     Logger getLogger() {
         return logger;
     }
 
-    Executor getExecutor() {
+    ExecutorService getExecutor() {
         return executor;
     }
 
@@ -56,10 +60,11 @@ public class JavaFileSystemImpl implements JavaFileSystem {
         return arrayStreams;
     }
 
-    private Thread newThread(Runnable r) {
-        Thread thread = new Thread(THREAD_GROUP, r, THREAD_GROUP.getName() + "-" + threadCount.getAndIncrement());
-        thread.setDaemon(true);
-        logger.log(Level.DEBUG, "Creating thread " + thread.getName());
-        return thread;
+    AttributeCache getAttributeCache() {
+        return attributes;
+    }
+
+    ContentCache getContentCache() {
+        return content;
     }
 }
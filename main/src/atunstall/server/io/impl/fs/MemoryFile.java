@@ -0,0 +1,266 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.io.api.BufferConsumer;
+import atunstall.server.io.api.ByteRangeVisitor;
+import atunstall.server.io.api.InputStream;
+import atunstall.server.io.api.OutputStream;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.fs.Durability;
+import atunstall.server.io.api.fs.File;
+import atunstall.server.io.api.fs.FileSystem;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import atunstall.server.io.impl.util.HandledInputStreamImpl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class MemoryFile implements File<String> {
+    private final MemoryFileSystemImpl fs;
+    private final String path;
+
+    MemoryFile(MemoryFileSystemImpl fs, String path) {
+        this.fs = fs;
+        this.path = path;
+    }
+
+    @Override
+    public FileSystem<String> getFileSystem() {
+        return fs;
+    }
+
+    @Override
+    public InputStream newInputStream(long offset, long length) {
+        if (offset < 0L || length < 0L) {
+            throw new IllegalArgumentException("range is negative");
+        }
+        return new InputStreamImpl(getContent(), offset, length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length);
+    }
+
+    @Override
+    public CompletionStage<List<atunstall.server.io.api.ByteBuffer>> read(long[] positions, int[] lengths) {
+        if (positions.length != lengths.length) {
+            throw new IllegalArgumentException("positions and lengths differ in length");
+        }
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] < 0L || lengths[i] < 0) {
+                throw new IllegalArgumentException("range is negative");
+            }
+        }
+        ChunkedContent content;
+        try {
+            content = getContent();
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        List<atunstall.server.io.api.ByteBuffer> buffers = new ArrayList<>(positions.length);
+        for (int i = 0; i < positions.length; i++) {
+            ByteBuffer target = ByteBuffer.allocate((int) Math.max(Math.min(lengths[i], content.size() - positions[i]), 0L));
+            content.read(positions[i], target);
+            buffers.add(fs.getArrayStreams().createByteBuffer(target.flip()));
+        }
+        return CompletableFuture.completedFuture(buffers);
+    }
+
+    @Override
+    public OutputStream newOutputStream(Durability durability) {
+        // Memory is as durable as this file system gets, so every durability is already met
+        return new OutputStreamImpl(fs.createContent(path));
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, long offset, long count) {
+        if (offset < 0L || count < 0L) {
+            throw new IllegalArgumentException("range is negative");
+        }
+        ChunkedContent content = getContent();
+        long transferred = 0L;
+        try {
+            ByteBuffer slice;
+            while (transferred < count && (slice = content.slice(offset + transferred, count - transferred)).hasRemaining()) {
+                while (slice.hasRemaining()) {
+                    if (target.write(slice) == 0) {
+                        return transferred + slice.position();
+                    }
+                }
+                transferred += slice.position();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to transfer file", e);
+        }
+        return transferred;
+    }
+
+    @Override
+    public ParsableByteBuffer map(long position, long count) {
+        if (position < 0L || count < 0L) {
+            throw new IllegalArgumentException("range is negative");
+        }
+        ChunkedContent content = getContent();
+        if (position + count > content.size()) {
+            throw new IllegalArgumentException("range exceeds the file size");
+        }
+        // Each chunk is wrapped rather than copied, and the chunks are concatenated
+        List<ParsableByteBuffer> chunks = new ArrayList<>();
+        for (long offset = 0L; offset < count || chunks.isEmpty(); ) {
+            ByteBuffer slice = content.slice(position + offset, count - offset);
+            chunks.add(fs.getArrayStreams().createByteBuffer(slice));
+            offset += slice.remaining();
+            if (!slice.hasRemaining()) {
+                break;
+            }
+        }
+        return fs.getArrayStreams().concatenate(chunks);
+    }
+
+    @Override
+    public boolean exists() {
+        return fs.getContent(path) != null;
+    }
+
+    @Override
+    public boolean notExists() {
+        return !exists();
+    }
+
+    @Override
+    public boolean canRead() {
+        return exists();
+    }
+
+    @Override
+    public boolean canWrite() {
+        return true;
+    }
+
+    @Override
+    public Optional<String> getMimeType() {
+        String type = MimeTypes.fromExtension(path);
+        ChunkedContent content = fs.getContent(path);
+        if (type == null && content != null) {
+            byte[] head = new byte[MimeTypes.SNIFF_LENGTH];
+            int length = Math.max(content.read(0L, ByteBuffer.wrap(head)), 0);
+            type = MimeTypes.sniff(head, length);
+        }
+        return Optional.ofNullable(type);
+    }
+
+    @Override
+    public long getSize() {
+        return getContent().size();
+    }
+
+    private ChunkedContent getContent() {
+        ChunkedContent content = fs.getContent(path);
+        if (content == null) {
+            throw new UncheckedIOException("file does not exist", new NoSuchFileException(path));
+        }
+        return content;
+    }
+
+    private class OutputStreamImpl implements OutputStream, ByteRangeVisitor {
+        private final ChunkedContent content;
+        private volatile boolean closed;
+
+        private OutputStreamImpl(ChunkedContent content) {
+            this.content = content;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public synchronized void accept(atunstall.server.io.api.ByteBuffer byteBuffer) {
+            // Synchronized so that the ranges of concurrently written buffers are not interleaved
+            if (closed) {
+                throw new IllegalStateException("stream closed");
+            }
+            byteBuffer.visit(0L, byteBuffer.count(), this);
+        }
+
+        @Override
+        public void visit(byte[] bytes, int offset, int count) {
+            content.append(bytes, offset, count);
+        }
+
+        @Override
+        public void visit(ByteBuffer bytes) {
+            content.append(bytes);
+        }
+    }
+
+    private class InputStreamImpl extends HandledInputStreamImpl implements InputStream {
+        private final ChunkedContent content;
+        private final AppendableParsableByteBuffer buffer;
+        private final long limit;
+        private long position;
+        private volatile boolean closed;
+
+        private InputStreamImpl(ChunkedContent content, long offset, long limit) {
+            super(fs.getLogger(), null);
+            this.content = content;
+            this.limit = limit;
+            position = offset;
+            buffer = fs.getArrayStreams().createByteBuffer(content.chunkSize());
+            fs.getExecutor().execute(this::read);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void queue(BufferConsumer consumer) {
+            super.queue(consumer);
+            if (isClosed()) {
+                fs.getExecutor().execute(this::drain);
+            }
+        }
+
+        /**
+         * Copies the next chunk into the buffer and passes it to the consumers, then schedules the next chunk if they still want more.
+         */
+        private synchronized void read() {
+            if (closed) {
+                drain();
+                return;
+            }
+            // Reads stop at the current end of the content, so bytes appended while streaming are included
+            ByteBuffer slice = position < limit ? content.slice(position, limit - position) : ByteBuffer.allocate(0);
+            if (!slice.hasRemaining()) {
+                closed = true;
+                drain();
+                return;
+            }
+            int count = slice.remaining();
+            buffer.reserve(count).put(slice);
+            buffer.commit(count);
+            position += count;
+            consumeSafe(buffer);
+            if (hasDemand(buffer)) {
+                fs.getExecutor().execute(this::read);
+            } else {
+                pause(() -> fs.getExecutor().execute(this::read));
+            }
+        }
+
+        private void drain() {
+            drain(buffer, fs.getExecutor());
+        }
+    }
+}
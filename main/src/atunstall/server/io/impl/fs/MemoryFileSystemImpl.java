@@ -0,0 +1,88 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.core.api.Module;
+import atunstall.server.core.api.Version;
+import atunstall.server.core.api.logging.Logger;
+import atunstall.server.io.api.fs.File;
+import atunstall.server.io.api.fs.MemoryFileSystem;
+import atunstall.server.io.api.util.ArrayStreams;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+@Module
+public final class MemoryFileSystemImpl implements MemoryFileSystem {
+    private static final ThreadGroup THREAD_GROUP = new ThreadGroup("IO-MemoryFS");
+    private static final String CHUNK_PROPERTY = "atunstall.server.io.memfs.chunk";
+
+    private final Logger logger;
+    private final ArrayStreams arrayStreams;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final ConcurrentMap<String, ChunkedContent> contents;
+    private final HandleCache<String, MemoryFile> cache;
+
+    public MemoryFileSystemImpl(@Version(major = 1, minor = 0) Logger logger, @Version(major = 1, minor = 0) ArrayStreams arrayStreams) {
+        this(logger, arrayStreams, FileSystemThreads.mode(), FileSystemThreads.threads(), Integer.getInteger(CHUNK_PROPERTY, 1 << 16));
+    }
+
+    MemoryFileSystemImpl(Logger logger, ArrayStreams arrayStreams, FileSystemThreads.ExecutionMode mode, int threads, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.logger = logger.getChild("Memory FS");
+        this.arrayStreams = arrayStreams;
+        executor = new FileSystemThreads(THREAD_GROUP, this.logger).newExecutor(mode, threads);
+        this.chunkSize = chunkSize;
+        contents = new ConcurrentHashMap<>();
+        cache = new HandleCache<>(p -> new MemoryFile(this, p), 1 << 16);
+    }
+
+    @Override
+    public File<? extends String> getFile(String path) {
+        return cache.get(normalize(path));
+    }
+
+    @Override
+    public boolean delete(String path) {
+        return contents.remove(normalize(path)) != null;
+    }
+
+    Logger getLogger() {
+        return logger;
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    ArrayStreams getArrayStreams() {
+        return arrayStreams;
+    }
+
+    ChunkedContent getContent(String path) {
+        return contents.get(path);
+    }
+
+    ChunkedContent createContent(String path) {
+        // Readers of the replaced content keep reading it, as they would an unlinked file
+        ChunkedContent content = new ChunkedContent(chunkSize);
+        contents.put(path, content);
+        return content;
+    }
+
+    private static String normalize(String path) {
+        Deque<String> names = new ArrayDeque<>();
+        for (String name : path.split("/")) {
+            if (name.equals("..")) {
+                names.pollLast();
+            } else if (!name.isEmpty() && !name.equals(".")) {
+                names.addLast(name);
+            }
+        }
+        return "/" + String.join("/", names);
+    }
+}
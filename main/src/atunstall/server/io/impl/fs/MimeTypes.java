@@ -0,0 +1,137 @@
+package atunstall.server.io.impl.fs;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves MIME types from file extensions and from the magic bytes at the start of files, without touching the file system.
+ */
+class MimeTypes {
+    /**
+     * The number of bytes at the start of a file that are enough to recognise every signature.
+     */
+    static final int SNIFF_LENGTH = 16;
+
+    private static final Map<String, String> EXTENSIONS = Map.ofEntries(
+            Map.entry("html", "text/html"),
+            Map.entry("htm", "text/html"),
+            Map.entry("css", "text/css"),
+            Map.entry("js", "text/javascript"),
+            Map.entry("mjs", "text/javascript"),
+            Map.entry("txt", "text/plain"),
+            Map.entry("csv", "text/csv"),
+            Map.entry("md", "text/markdown"),
+            Map.entry("xml", "application/xml"),
+            Map.entry("json", "application/json"),
+            Map.entry("map", "application/json"),
+            Map.entry("webmanifest", "application/manifest+json"),
+            Map.entry("wasm", "application/wasm"),
+            Map.entry("pdf", "application/pdf"),
+            Map.entry("zip", "application/zip"),
+            Map.entry("gz", "application/gzip"),
+            Map.entry("tar", "application/x-tar"),
+            Map.entry("jar", "application/java-archive"),
+            Map.entry("bin", "application/octet-stream"),
+            Map.entry("png", "image/png"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("avif", "image/avif"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("ico", "image/vnd.microsoft.icon"),
+            Map.entry("bmp", "image/bmp"),
+            Map.entry("woff", "font/woff"),
+            Map.entry("woff2", "font/woff2"),
+            Map.entry("ttf", "font/ttf"),
+            Map.entry("otf", "font/otf"),
+            Map.entry("mp3", "audio/mpeg"),
+            Map.entry("ogg", "audio/ogg"),
+            Map.entry("wav", "audio/wav"),
+            Map.entry("flac", "audio/flac"),
+            Map.entry("mp4", "video/mp4"),
+            Map.entry("webm", "video/webm")
+    );
+
+    private MimeTypes() {
+        // Static utility class
+    }
+
+    /**
+     * Looks up the MIME type associated with the extension of the given file.
+     * @param path The path of the file.
+     * @return The MIME type, or {@code null} if the extension is unknown.
+     */
+    static String fromExtension(Path path) {
+        Path name = path.getFileName();
+        return name != null ? fromExtension(name.toString()) : null;
+    }
+
+    /**
+     * Looks up the MIME type associated with the extension of the given file name.
+     * @param fileName The name of the file.
+     * @return The MIME type, or {@code null} if the extension is unknown.
+     */
+    static String fromExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? null : EXTENSIONS.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Recognises the MIME type of a file from the signature at its start.
+     * @param head The first bytes of the file.
+     * @param length The number of bytes in the array that were read from the file.
+     * @return The MIME type, or {@code null} if no signature matches.
+     */
+    static String sniff(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')) {
+            return "image/png";
+        } else if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        } else if (startsWith(head, length, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        } else if (startsWith(head, length, 0, 'R', 'I', 'F', 'F') && startsWith(head, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        } else if (startsWith(head, length, 0, 'R', 'I', 'F', 'F') && startsWith(head, length, 8, 'W', 'A', 'V', 'E')) {
+            return "audio/wav";
+        } else if (startsWith(head, length, 4, 'f', 't', 'y', 'p', 'a', 'v', 'i', 'f')) {
+            return "image/avif";
+        } else if (startsWith(head, length, 4, 'f', 't', 'y', 'p')) {
+            return "video/mp4";
+        } else if (startsWith(head, length, 0, '%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        } else if (startsWith(head, length, 0, 'P', 'K', 0x03, 0x04)) {
+            return "application/zip";
+        } else if (startsWith(head, length, 0, 0x1F, 0x8B)) {
+            return "application/gzip";
+        } else if (startsWith(head, length, 0, 0x00, 'a', 's', 'm')) {
+            return "application/wasm";
+        } else if (startsWith(head, length, 0, 'w', 'O', 'F', 'F')) {
+            return "font/woff";
+        } else if (startsWith(head, length, 0, 'w', 'O', 'F', '2')) {
+            return "font/woff2";
+        } else if (startsWith(head, length, 0, 'O', 'g', 'g', 'S')) {
+            return "audio/ogg";
+        } else if (startsWith(head, length, 0, 'f', 'L', 'a', 'C')) {
+            return "audio/flac";
+        } else if (startsWith(head, length, 0, 'I', 'D', '3')) {
+            return "audio/mpeg";
+        } else if (startsWith(head, length, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return "video/webm";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, int... signature) {
+        if (offset + signature.length > length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
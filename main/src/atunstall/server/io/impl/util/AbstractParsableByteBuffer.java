@@ -0,0 +1,264 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ByteRangeVisitor;
+import atunstall.server.io.api.ParsableByteBuffer;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public abstract class AbstractParsableByteBuffer implements ParsableByteBuffer, Searchable, Trackable {
+    private static final int FRONT = 0;
+    private static final int PREFIX = 1;
+    private static final int SUFFIX = 2;
+
+    int index;
+    int length;
+    long consumed;
+    int mark;
+    private final PartitionRegistry partitions;
+    private boolean journaled;
+    private int[] journal;
+    private int journalLength;
+    private byte[] journalBytes;
+    private int journalBytesLength;
+
+    AbstractParsableByteBuffer(int index, int length) {
+        this.index = index;
+        this.length = length;
+        partitions = new PartitionRegistry();
+    }
+
+    abstract byte read(int position);
+
+    abstract void read(int position, byte[] bytes, int offset, int count);
+
+    abstract void visit(int position, int count, ByteRangeVisitor visitor);
+
+    abstract void write(int position, byte[] bytes, int offset, int count);
+
+    abstract void move(int from, int to, int count);
+
+    abstract void fill(int position, int count);
+
+    abstract int indexIn(int from, int to, BytePattern pattern);
+
+    abstract String decode(int position, int count, Charset charset);
+
+    /**
+     * Called before bytes are moved or overwritten, so that subclasses backed by read-only storage can copy it.
+     * Positions may be changed by this method, as long as the subclass updates {@link #index} and {@link #mark} to match.
+     */
+    void beforeWrite() {
+        // Empty
+    }
+
+    /**
+     * Returns the position of the first byte that must be kept, which is {@link #mark} while consumptions are journaled.
+     * @return The position of the first byte that can still be read or restored.
+     */
+    int retained() {
+        return journaled ? mark : index;
+    }
+
+    @Override
+    public long count() {
+        return length;
+    }
+
+    @Override
+    public byte get(long index) {
+        validateArgs(index, 1);
+        return read(this.index + (int) index);
+    }
+
+    @Override
+    public void get(long index, byte[] bytes, int offset, int count) {
+        validateArgs(index, count);
+        read(this.index + (int) index, bytes, offset, count);
+    }
+
+    @Override
+    public void apply(long index, long count, Consumer<byte[]> consumer) {
+        validateArgs(index, count);
+        int intCount = (int) count;
+        byte[] copy = new byte[intCount];
+        read(this.index + (int) index, copy, 0, intCount);
+        consumer.accept(copy);
+    }
+
+    @Override
+    public void visit(long index, long count, ByteRangeVisitor visitor) {
+        validateArgs(index, count);
+        visit(this.index + (int) index, (int) count, visitor);
+    }
+
+    @Override
+    public long indexOf(long index, byte[] sequence) {
+        return indexOf(index, new CompiledBytePattern(sequence, false));
+    }
+
+    @Override
+    public long indexOf(long index, BytePattern pattern) {
+        validateArgs(index, 0);
+        return search(index, length, pattern);
+    }
+
+    @Override
+    public long search(long index, long end, BytePattern pattern) {
+        int result = indexIn(this.index + (int) index, this.index + (int) end, pattern);
+        return result < 0 ? -1L : result - this.index;
+    }
+
+    @Override
+    public boolean compare(long index, byte[] sequence) {
+        validateArgs(index, sequence.length);
+        int intIndex = (int) index;
+        for (byte value : sequence) {
+            if (read(this.index + intIndex++) != value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void consume(long index, long count) {
+        validateArgs(index, count);
+        if (index != 0L && index + count < length) {
+            beforeWrite();
+        }
+        consumed += count;
+        int intIndex = (int) index, intCount = (int) count;
+        if (index == 0L) {
+            record(FRONT, intIndex, intCount);
+            this.index += intCount;
+        } else if (intIndex + intCount / 2 < length / 2) {
+            record(PREFIX, intIndex, intCount);
+            move(this.index, this.index += intCount, intIndex);
+        } else {
+            record(SUFFIX, intIndex, intCount);
+            move(this.index + intIndex + intCount, this.index + intIndex, length - intIndex - intCount);
+        }
+        this.length -= intCount;
+        partitions.onConsume(intIndex, intCount);
+    }
+
+    @Override
+    public void consumeAll() {
+        consumed += length;
+        record(FRONT, 0, length);
+        partitions.onConsume(0, length);
+        index += length;
+        length = 0;
+    }
+
+    @Override
+    public long bytesConsumed() {
+        return consumed;
+    }
+
+    @Override
+    public boolean track(ChangeFlag flag) {
+        partitions.track(flag);
+        return true;
+    }
+
+    @Override
+    public ParsableByteBuffer partition(long index, long count) {
+        if (index > Integer.MAX_VALUE || index + count > length) {
+            throw new ArrayIndexOutOfBoundsException("index is too large");
+        }
+        return new ParsablePartitionByteBuffer(this, partitions, index, count);
+    }
+
+    @Override
+    public void clear(long index, long count) {
+        validateArgs(index, count);
+        beforeWrite();
+        fill(this.index + (int) index, (int) count);
+    }
+
+    @Override
+    public String toString(long index, long count, Charset charset) {
+        if (index > Integer.MAX_VALUE || count > Integer.MAX_VALUE || index + count > length) {
+            throw new ArrayIndexOutOfBoundsException("index is too large");
+        }
+        return decode(this.index + (int) index, (int) count, charset);
+    }
+
+    /**
+     * Starts journaling consumptions so that they can be undone by {@link #restore()}.
+     * Every byte from {@link #mark} onwards must be preserved by the subclass until the next checkpoint.
+     */
+    void checkpoint() {
+        journaled = true;
+        mark = index;
+        journalLength = 0;
+        journalBytesLength = 0;
+        partitions.checkpoint();
+        reset();
+    }
+
+    /**
+     * Undoes every consumption since the last checkpoint, in reverse order.
+     * Front consumptions are undone in constant time, other consumptions in time proportional to the number of bytes that were moved.
+     */
+    void restore() {
+        while (journalLength > 0) {
+            int kind = journal[journalLength - 3], index = journal[journalLength - 2], count = journal[journalLength - 1];
+            journalLength -= 3;
+            if (kind == FRONT) {
+                this.index -= count;
+            } else {
+                beforeWrite();
+                journalBytesLength -= count;
+                if (kind == PREFIX) {
+                    move(this.index, this.index -= count, index);
+                } else {
+                    move(this.index + index, this.index + index + count, length - index);
+                }
+                write(this.index + index, journalBytes, journalBytesLength, count);
+            }
+            length += count;
+        }
+        partitions.restore();
+        reset();
+    }
+
+    void reset() {
+        consumed = 0L;
+    }
+
+    private void record(int kind, int index, int count) {
+        if (!journaled || count == 0) {
+            return;
+        }
+        if (kind == FRONT && journalLength > 0 && journal[journalLength - 3] == FRONT) {
+            journal[journalLength - 1] += count;
+            return;
+        }
+        if (journal == null || journalLength == journal.length) {
+            journal = journal == null ? new int[12] : Arrays.copyOf(journal, journal.length << 1);
+        }
+        journal[journalLength++] = kind;
+        journal[journalLength++] = index;
+        journal[journalLength++] = count;
+        if (kind != FRONT) {
+            if (journalBytes == null || journalBytesLength + count > journalBytes.length) {
+                journalBytes = Arrays.copyOf(journalBytes == null ? new byte[0] : journalBytes, Math.max(journalBytesLength + count, journalBytesLength << 1));
+            }
+            read(this.index + index, journalBytes, journalBytesLength, count);
+            journalBytesLength += count;
+        }
+    }
+
+    private void validateArgs(long index, long count) {
+        if (index + count > length || index + count > Integer.MAX_VALUE) {
+            throw new ArrayIndexOutOfBoundsException("index is too large");
+        } else if (index < 0) {
+            throw new ArrayIndexOutOfBoundsException("index is negative");
+        }
+    }
+}
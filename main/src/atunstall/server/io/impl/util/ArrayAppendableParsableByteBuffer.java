@@ -3,15 +3,15 @@ package atunstall.server.io.impl.util;
 import atunstall.server.io.api.ByteBuffer;
 import atunstall.server.io.api.util.AppendableParsableByteBuffer;
 
-// TODO Allow more than Integer.MAX_VALUE bytes.
+// Indexed by int, so buffers that may exceed Integer.MAX_VALUE bytes use SegmentedAppendableParsableByteBuffer instead
 public class ArrayAppendableParsableByteBuffer extends ArrayParsableByteBuffer implements AppendableParsableByteBuffer {
-    private byte[] copy;
-    private int copyIndex;
-    private int copyLength;
+    private static final byte[] EMPTY = new byte[0];
 
-    ArrayAppendableParsableByteBuffer(int length) {
-        super(new byte[length]);
-        copy = new byte[length];
+    private final BufferPool<byte[]> pool;
+
+    ArrayAppendableParsableByteBuffer(BufferPool<byte[]> pool, int length) {
+        super(pool.acquire(length));
+        this.pool = pool;
         this.length = 0;
         updateBackup();
     }
@@ -26,35 +26,63 @@ public class ArrayAppendableParsableByteBuffer extends ArrayParsableByteBuffer i
 
     @Override
     public void append(ByteBuffer buffer) {
-        validateSize(buffer.count());
-        buffer.get(0L, this.buffer, index + length, (int) buffer.count());
+        int count = (int) buffer.count();
+        validateSize(count);
+        buffer.get(0L, this.buffer, index + length, count);
+        length += count;
+        updateBackup();
+    }
+
+    @Override
+    public java.nio.ByteBuffer reserve(int count) {
+        validateSize(count);
+        return java.nio.ByteBuffer.wrap(buffer, index + length, count).slice();
+    }
+
+    @Override
+    public void commit(int count) {
+        if (index + length + count > buffer.length) {
+            throw new ArrayIndexOutOfBoundsException("commit exceeds the reserved space");
+        }
+        length += count;
+        updateBackup();
     }
 
     @Override
     public void rollback() {
-        System.arraycopy(copy, copyIndex, buffer, index = copyIndex, length = copyLength);
-        reset();
+        restore();
     }
 
     @Override
     public void updateBackup() {
-        System.arraycopy(buffer, index, copy, copyIndex = index, copyLength = length);
-        reset();
+        checkpoint();
+    }
+
+    @Override
+    public void release() {
+        if (buffer != EMPTY) {
+            pool.release(buffer);
+            buffer = EMPTY;
+        }
+        index = length = 0;
+        checkpoint();
     }
 
     private void validateSize(long count) {
+        int retained = index + length - mark;
         if (index + length + count > buffer.length) {
-            if (index > buffer.length / 2 && count + length < buffer.length) {
-                System.arraycopy(buffer, index, buffer, 0, length);
+            if (mark > buffer.length / 2 && count + retained < buffer.length) {
+                System.arraycopy(buffer, mark, buffer, 0, retained);
             } else {
-                int newLength = Math.min(buffer.length, 256);
-                while (index + length + count > (newLength <<= 1)) ;     // Intentionally empty loop
-                byte[] newBuffer = new byte[newLength];
-                System.arraycopy(buffer, index, newBuffer, 0, length);
+                byte[] newBuffer = pool.acquire((int) Math.max(retained + count, buffer.length << 1));
+                System.arraycopy(buffer, mark, newBuffer, 0, retained);
+                if (buffer != EMPTY) {
+                    pool.release(buffer);
+                }
                 buffer = newBuffer;
-                copy = new byte[newBuffer.length];
             }
-            index = 0;
+            index -= mark;
+            mark = 0;
         }
     }
 }
@@ -1,6 +1,7 @@
 package atunstall.server.io.impl.util;
 
 import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.ByteRangeVisitor;
 
 import java.util.Arrays;
 import java.util.function.Consumer;
@@ -38,6 +39,12 @@ public class ArrayByteBuffer implements ByteBuffer {
         consumer.accept(copy);
     }
 
+    @Override
+    public void visit(long index, long count, ByteRangeVisitor visitor) {
+        validateArgs(index, count);
+        visitor.visit(buffer, (int) index, (int) count);
+    }
+
     @Override
     public ByteBuffer partition(long index, long count) {
         validateArgs(index, count);
@@ -1,19 +1,42 @@
 package atunstall.server.io.impl.util;
 
 import atunstall.server.core.api.Module;
+import atunstall.server.core.api.Version;
+import atunstall.server.core.api.logging.Level;
+import atunstall.server.core.api.logging.Logger;
 import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ByteReader;
 import atunstall.server.io.api.util.AppendableParsableByteBuffer;
 import atunstall.server.io.api.util.ArrayStreams;
 import atunstall.server.io.api.ParsableByteBuffer;
 import atunstall.server.io.api.util.HandledInputStream;
+import atunstall.server.io.api.util.PoolStatistics;
 
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Module
 public class ArrayStreamsImpl implements ArrayStreams {
+    private static final ThreadGroup THREAD_GROUP = new ThreadGroup("IO-Streams");
+
+    private final Logger logger;
+    private final BufferPool<byte[]> pool;
+    private final BufferPool<java.nio.ByteBuffer> directPool;
+    private final ExecutorService executor;
+
+    public ArrayStreamsImpl(@Version(major = 1, minor = 0) Logger logger) {
+        this.logger = logger.getChild("Array Streams");
+        pool = new BufferPool<>(byte[]::new, b -> b.length, b -> {});
+        directPool = new BufferPool<>(java.nio.ByteBuffer::allocateDirect, java.nio.ByteBuffer::capacity, java.nio.ByteBuffer::clear);
+        executor = newExecutor(this.logger);
+    }
+
     @Override
     public ByteBuffer createByteBuffer(byte[] data) {
         return new ArrayByteBuffer(Arrays.copyOf(data, data.length));
@@ -21,7 +44,52 @@ public class ArrayStreamsImpl implements ArrayStreams {
 
     @Override
     public AppendableParsableByteBuffer createByteBuffer(int length) {
-        return new ArrayAppendableParsableByteBuffer(length);
+        return new ArrayAppendableParsableByteBuffer(pool, length);
+    }
+
+    @Override
+    public AppendableParsableByteBuffer createDirectByteBuffer(int length) {
+        return new DirectAppendableParsableByteBuffer(directPool, length);
+    }
+
+    @Override
+    public AppendableParsableByteBuffer createSegmentedByteBuffer(int chunkSize) {
+        return new SegmentedAppendableParsableByteBuffer(pool, chunkSize);
+    }
+
+    @Override
+    public ParsableByteBuffer createByteBuffer(java.nio.ByteBuffer buffer) {
+        return new DirectParsableByteBuffer(buffer);
+    }
+
+    @Override
+    public BytePattern createPattern(byte[] sequence) {
+        return new CompiledBytePattern(Arrays.copyOf(sequence, sequence.length), true);
+    }
+
+    @Override
+    public ByteReader createReader(ParsableByteBuffer buffer) {
+        return new ByteReaderImpl(buffer);
+    }
+
+    @Override
+    public byte[] acquire(int length) {
+        return pool.acquire(length);
+    }
+
+    @Override
+    public void release(byte[] array) {
+        pool.release(array);
+    }
+
+    @Override
+    public PoolStatistics getPoolStatistics() {
+        return pool;
+    }
+
+    @Override
+    public PoolStatistics getDirectPoolStatistics() {
+        return directPool;
     }
 
     @Override
@@ -38,7 +106,7 @@ public class ArrayStreamsImpl implements ArrayStreams {
             case 0:
                 return createByteBuffer(0);
             case 1:
-                return createByteBuffer(256);
+                return buffers.get(0);
             default:
                 return new ConcatenatedParsableByteBuffer(this, buffers);
         }
@@ -46,16 +114,27 @@ public class ArrayStreamsImpl implements ArrayStreams {
 
     @Override
     public HandledInputStream createInputStream(AutoCloseable closeCallback) {
-        return new HandledInputStreamImpl(closeCallback);
+        return new HandledInputStreamImpl(logger, closeCallback);
     }
 
     @Override
     public InputStream wrap(atunstall.server.io.api.InputStream stream) {
-        return new WrappedInputStream(stream);
+        return new WrappedInputStream(this, stream);
     }
 
     @Override
-    public OutputStream wrap(atunstall.server.io.api.OutputStream stream) {
-        return new WrappedOutputStream(stream);
+    public OutputStream wrap(atunstall.server.io.api.OutputStream stream, int bufferSize) {
+        return new WrappedOutputStream(this, stream, bufferSize, executor);
+    }
+
+    private static ExecutorService newExecutor(Logger logger) {
+        // Each wrapped stream hands off at most one batch at a time, so idle threads are only kept briefly
+        AtomicLong threadCount = new AtomicLong(0L);
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(THREAD_GROUP, r, THREAD_GROUP.getName() + "-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            logger.log(Level.DEBUG, "Creating thread " + thread.getName());
+            return thread;
+        });
     }
 }
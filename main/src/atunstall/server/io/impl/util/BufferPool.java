@@ -0,0 +1,198 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.util.PoolStatistics;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Pool of buffers sorted into power of two size classes.
+ * Each platform thread keeps a small cache of buffers per size class within a byte budget, which is backed by a bounded shared cache.
+ * Virtual threads only use the shared cache, as they rarely live long enough to reuse their own.
+ * @param <T> The type of buffer stored in this pool.
+ */
+class BufferPool<T> implements PoolStatistics {
+    static final int MIN_SHIFT = 8;
+    static final int MAX_SHIFT = 20;
+    private static final int CLASS_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+    private static final int LOCAL_DEPTH = 8;
+    private static final int LOCAL_BYTES = 1 << 20;
+    private static final int SHARED_BYTES = 1 << 22;
+    private static final int MAX_SHARED_DEPTH = 256;
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private final IntFunction<T> allocator;
+    private final ToIntFunction<T> capacity;
+    private final Consumer<T> recycler;
+    private final ThreadLocal<LocalCache<T>> local;
+    private final Queue<T>[] shared;
+    private final AtomicInteger[] sharedCounts;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder recycled;
+    private final LongAdder discarded;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BufferPool(IntFunction<T> allocator, ToIntFunction<T> capacity, Consumer<T> recycler) {
+        this.allocator = allocator;
+        this.capacity = capacity;
+        this.recycler = recycler;
+        local = ThreadLocal.withInitial(LocalCache::new);
+        shared = new Queue[CLASS_COUNT];
+        sharedCounts = new AtomicInteger[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            shared[i] = new ConcurrentLinkedQueue<>();
+            sharedCounts[i] = new AtomicInteger();
+        }
+        hits = new LongAdder();
+        misses = new LongAdder();
+        recycled = new LongAdder();
+        discarded = new LongAdder();
+    }
+
+    /**
+     * Returns a buffer with a capacity of at least the given length.
+     * Pooled buffers are rounded up to the size of their class, so the capacity may be larger than requested.
+     */
+    T acquire(int length) {
+        int sizeClass = sizeClass(length);
+        if (sizeClass < 0) {
+            misses.increment();
+            return allocator.apply(length);
+        }
+        LocalCache<T> cache = localCache();
+        T buffer = cache != null ? cache.poll(sizeClass) : null;
+        if (buffer == null && (buffer = shared[sizeClass].poll()) != null) {
+            sharedCounts[sizeClass].decrementAndGet();
+        }
+        if (buffer == null) {
+            misses.increment();
+            return allocator.apply(1 << (sizeClass + MIN_SHIFT));
+        }
+        hits.increment();
+        return buffer;
+    }
+
+    /**
+     * Returns the given buffer to this pool.
+     * The buffer must not be used by the caller afterwards.
+     */
+    void release(T buffer) {
+        int length = capacity.applyAsInt(buffer);
+        int sizeClass = sizeClass(length);
+        if (sizeClass < 0 || length != 1 << (sizeClass + MIN_SHIFT)) {
+            discarded.increment();
+            return;
+        }
+        recycler.accept(buffer);
+        LocalCache<T> cache = localCache();
+        if (cache == null || !cache.offer(sizeClass, buffer)) {
+            if (sharedCounts[sizeClass].incrementAndGet() > sharedDepth(sizeClass)) {
+                sharedCounts[sizeClass].decrementAndGet();
+                discarded.increment();
+                return;
+            }
+            shared[sizeClass].offer(buffer);
+        }
+        recycled.increment();
+    }
+
+    @Override
+    public long hits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long misses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long recycled() {
+        return recycled.sum();
+    }
+
+    @Override
+    public long discarded() {
+        return discarded.sum();
+    }
+
+    private LocalCache<T> localCache() {
+        return isVirtual(Thread.currentThread()) ? null : local.get();
+    }
+
+    static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            // Thread.isVirtual throws nothing
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        // Looked up reflectively so that the pool still runs on releases without virtual threads
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static int sizeClass(int length) {
+        if (length > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        return Math.max(32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1) - MIN_SHIFT, 0);
+    }
+
+    private static int sharedDepth(int sizeClass) {
+        return Math.min(Math.max(SHARED_BYTES >> (sizeClass + MIN_SHIFT), 4), MAX_SHARED_DEPTH);
+    }
+
+    /**
+     * Buffers kept by one thread, which are bounded both per size class and in total bytes.
+     */
+    private static class LocalCache<T> {
+        private final ArrayDeque<T>[] buffers;
+        private int bytes;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private LocalCache() {
+            buffers = new ArrayDeque[CLASS_COUNT];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new ArrayDeque<>(LOCAL_DEPTH);
+            }
+        }
+
+        private T poll(int sizeClass) {
+            T buffer = buffers[sizeClass].poll();
+            if (buffer != null) {
+                bytes -= 1 << (sizeClass + MIN_SHIFT);
+            }
+            return buffer;
+        }
+
+        private boolean offer(int sizeClass, T buffer) {
+            int length = 1 << (sizeClass + MIN_SHIFT);
+            if (buffers[sizeClass].size() >= LOCAL_DEPTH || bytes + length > LOCAL_BYTES) {
+                return false;
+            }
+            buffers[sizeClass].push(buffer);
+            bytes += length;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.ByteReader;
+import atunstall.server.io.api.ParsableByteBuffer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+
+/**
+ * Reads through a window copied from the buffer, so the buffer is only accessed and bounds-checked once per window.
+ */
+public class ByteReaderImpl implements ByteReader {
+    private static final int WINDOW_SIZE = 512;
+    private static final VarHandle SHORTS = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle SHORTS_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INTS_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONGS_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final byte[] window;
+    private final char[] chars;
+    private ParsableByteBuffer buffer;
+    private long windowStart;
+    private int offset;
+    private int limit;
+    private long mark;
+
+    ByteReaderImpl(ParsableByteBuffer buffer) {
+        window = new byte[WINDOW_SIZE];
+        chars = new char[WINDOW_SIZE / 4];
+        attach(buffer);
+    }
+
+    @Override
+    public ByteReader attach(ParsableByteBuffer buffer) {
+        this.buffer = buffer;
+        windowStart = 0L;
+        offset = 0;
+        limit = 0;
+        mark = 0L;
+        return this;
+    }
+
+    @Override
+    public long position() {
+        return windowStart + offset;
+    }
+
+    @Override
+    public long remaining() {
+        return buffer.count() - position();
+    }
+
+    @Override
+    public boolean has(long count) {
+        return count <= limit - offset || count <= remaining();
+    }
+
+    @Override
+    public void skip(long count) {
+        if (count <= limit - offset) {
+            offset += (int) count;
+            return;
+        } else if (count > remaining()) {
+            throw new IllegalStateException("not enough bytes");
+        }
+        windowStart += offset + count;
+        offset = 0;
+        limit = 0;
+    }
+
+    @Override
+    public void mark() {
+        mark = position();
+    }
+
+    @Override
+    public void reset() {
+        seek(mark);
+    }
+
+    @Override
+    public void commit() {
+        long position = position();
+        if (position > 0L) {
+            buffer.consume(0L, position);
+        }
+        // The window bytes after the cursor are still valid, they just moved to the start of the buffer
+        windowStart -= position;
+        mark = 0L;
+    }
+
+    @Override
+    public byte readByte() {
+        if (offset == limit) {
+            fill(1);
+        }
+        return window[offset++];
+    }
+
+    @Override
+    public int readUnsignedByte() {
+        return readByte() & 0xFF;
+    }
+
+    @Override
+    public short readShort() {
+        int position = require(Short.BYTES);
+        return (short) SHORTS.get(window, position);
+    }
+
+    @Override
+    public short readShortLE() {
+        int position = require(Short.BYTES);
+        return (short) SHORTS_LE.get(window, position);
+    }
+
+    @Override
+    public int readInt() {
+        int position = require(Integer.BYTES);
+        return (int) INTS.get(window, position);
+    }
+
+    @Override
+    public int readIntLE() {
+        int position = require(Integer.BYTES);
+        return (int) INTS_LE.get(window, position);
+    }
+
+    @Override
+    public long readLong() {
+        int position = require(Long.BYTES);
+        return (long) LONGS.get(window, position);
+    }
+
+    @Override
+    public long readLongLE() {
+        int position = require(Long.BYTES);
+        return (long) LONGS_LE.get(window, position);
+    }
+
+    @Override
+    public int readVarInt() {
+        int result = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte value = readByte();
+            result |= (value & 0x7F) << shift;
+            if (value >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint is too long");
+    }
+
+    @Override
+    public long readVarLong() {
+        long result = 0L;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte value = readByte();
+            result |= (value & 0x7FL) << shift;
+            if (value >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("varint is too long");
+    }
+
+    @Override
+    public void read(byte[] bytes, int offset, int count) {
+        int available = limit - this.offset;
+        if (count <= available) {
+            System.arraycopy(window, this.offset, bytes, offset, count);
+            this.offset += count;
+            return;
+        } else if (count > remaining()) {
+            throw new IllegalStateException("not enough bytes");
+        }
+        System.arraycopy(window, this.offset, bytes, offset, available);
+        buffer.get(position() + available, bytes, offset + available, count - available);
+        windowStart += this.offset + count;
+        this.offset = 0;
+        limit = 0;
+    }
+
+    @Override
+    public void readUtf8(int count, StringBuilder destination) {
+        decode(count, destination, null);
+    }
+
+    @Override
+    public void readUtf8(int count, CharBuffer destination) {
+        decode(count, null, destination);
+    }
+
+    private void decode(int count, StringBuilder builder, CharBuffer buffer) {
+        if (count > remaining()) {
+            throw new IllegalStateException("not enough bytes");
+        }
+        int length = 0;
+        while (count > 0) {
+            if (length > chars.length - 2) {
+                flush(length, builder, buffer);
+                length = 0;
+            }
+            if (limit - offset < Math.min(count, 4)) {
+                fill(Math.min(count, 4));
+            }
+            int first = window[offset] & 0xFF;
+            if (first < 0x80) {
+                int end = offset + Math.min(count, Math.min(limit - offset, chars.length - length));
+                int start = offset;
+                while (offset < end && window[offset] >= 0) {
+                    chars[length++] = (char) window[offset++];
+                }
+                count -= offset - start;
+                continue;
+            }
+            int needed, min = 0x80, max = 0xBF;
+            if (first >= 0xC2 && first <= 0xDF) {
+                needed = 1;
+            } else if (first >= 0xE0 && first <= 0xEF) {
+                needed = 2;
+                if (first == 0xE0) {
+                    min = 0xA0;
+                } else if (first == 0xED) {
+                    max = 0x9F;
+                }
+            } else if (first >= 0xF0 && first <= 0xF4) {
+                needed = 3;
+                if (first == 0xF0) {
+                    min = 0x90;
+                } else if (first == 0xF4) {
+                    max = 0x8F;
+                }
+            } else {
+                chars[length++] = REPLACEMENT;
+                offset++;
+                count--;
+                continue;
+            }
+            int codePoint = first & (0x3F >> needed), read = 1;
+            for (; read <= needed && read < count; read++) {
+                int next = window[offset + read] & 0xFF;
+                if (next < min || next > max) {
+                    break;
+                }
+                codePoint = codePoint << 6 | next & 0x3F;
+                min = 0x80;
+                max = 0xBF;
+            }
+            offset += read;
+            count -= read;
+            if (read <= needed) {
+                chars[length++] = REPLACEMENT;
+            } else if (needed == 3) {
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[length++] = (char) codePoint;
+            }
+        }
+        flush(length, builder, buffer);
+    }
+
+    private void flush(int length, StringBuilder builder, CharBuffer buffer) {
+        if (builder != null) {
+            builder.append(chars, 0, length);
+        } else {
+            buffer.put(chars, 0, length);
+        }
+    }
+
+    private int require(int count) {
+        if (limit - offset < count) {
+            fill(count);
+        }
+        int position = offset;
+        offset += count;
+        return position;
+    }
+
+    private void fill(int count) {
+        long position = position();
+        long available = buffer.count() - position;
+        if (available < count) {
+            throw new IllegalStateException("not enough bytes");
+        }
+        limit = (int) Math.min(window.length, available);
+        buffer.get(position, window, 0, limit);
+        windowStart = position;
+        offset = 0;
+    }
+
+    private void seek(long position) {
+        if (position >= windowStart && position <= windowStart + limit) {
+            offset = (int) (position - windowStart);
+            return;
+        }
+        windowStart = position;
+        offset = 0;
+        limit = 0;
+    }
+}
@@ -0,0 +1,27 @@
+package atunstall.server.io.impl.util;
+
+/**
+ * Flag raised whenever the count of a buffer it tracks may have changed, so that views over several buffers can cache their layout until then.
+ * Buffers only keep weak references to the flags tracking them, so a flag does not outlive the view that owns it.
+ */
+final class ChangeFlag {
+    private boolean raised;
+
+    ChangeFlag() {
+        raised = true;
+    }
+
+    void raise() {
+        raised = true;
+    }
+
+    /**
+     * Lowers the flag.
+     * @return True if the flag was raised.
+     */
+    boolean lower() {
+        boolean raised = this.raised;
+        this.raised = false;
+        return raised;
+    }
+}
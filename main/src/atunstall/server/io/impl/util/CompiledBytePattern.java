@@ -0,0 +1,169 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.BytePattern;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool pattern.
+ * Short patterns skip the shift table and instead scan for their first byte eight bytes at a time.
+ */
+public class CompiledBytePattern implements BytePattern {
+    private static final int SHORT_LENGTH = 4;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final byte[] sequence;
+    private final int[] shifts;
+
+    CompiledBytePattern(byte[] sequence, boolean compile) {
+        this.sequence = sequence;
+        shifts = compile && sequence.length >= SHORT_LENGTH ? createShifts(sequence) : null;
+    }
+
+    @Override
+    public int length() {
+        return sequence.length;
+    }
+
+    @Override
+    public byte get(int index) {
+        return sequence[index];
+    }
+
+    @Override
+    public int indexIn(byte[] bytes, int from, int to) {
+        int m = sequence.length;
+        int last = to - m;
+        if (m == 0) {
+            return from <= to ? from : -1;
+        } else if (shifts == null) {
+            for (int i = from; i <= last; i++) {
+                if ((i = indexOf(bytes, i, last + 1, sequence[0])) < 0) {
+                    return -1;
+                } else if (Arrays.equals(bytes, i + 1, i + m, sequence, 1, m)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        byte lastByte = sequence[m - 1];
+        for (int i = from; i <= last; i += shifts[bytes[i + m - 1] & 0xFF]) {
+            if (bytes[i + m - 1] == lastByte && Arrays.equals(bytes, i, i + m - 1, sequence, 0, m - 1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int indexIn(java.nio.ByteBuffer bytes, int from, int to) {
+        int m = sequence.length;
+        int last = to - m;
+        if (m == 0) {
+            return from <= to ? from : -1;
+        } else if (shifts == null) {
+            for (int i = from; i <= last; i++) {
+                if ((i = indexOf(bytes, i, last + 1, sequence[0])) < 0) {
+                    return -1;
+                } else if (matches(bytes, i, 1)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        byte lastByte = sequence[m - 1];
+        for (int i = from; i <= last; i += shifts[bytes.get(i + m - 1) & 0xFF]) {
+            if (bytes.get(i + m - 1) == lastByte && matches(bytes, i, 0)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long indexIn(ByteBuffer buffer, long from, long to) {
+        int m = sequence.length;
+        long last = to - m;
+        if (m == 0) {
+            return from <= to ? from : -1L;
+        }
+        byte lastByte = sequence[m - 1];
+        for (long i = from; i <= last; i += shifts == null ? 1 : shifts[buffer.get(i + m - 1) & 0xFF]) {
+            if (buffer.get(i + m - 1) == lastByte && matches(buffer, i)) {
+                return i;
+            }
+        }
+        return -1L;
+    }
+
+    private boolean matches(java.nio.ByteBuffer bytes, int index, int from) {
+        for (int i = from; i < sequence.length; i++) {
+            if (bytes.get(index + i) != sequence[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(ByteBuffer buffer, long index) {
+        for (int i = 0; i < sequence.length - 1; i++) {
+            if (buffer.get(index + i) != sequence[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        long pattern = (value & 0xFFL) * ONES;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONGS.get(bytes, i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0L) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(java.nio.ByteBuffer bytes, int from, int to, byte value) {
+        long pattern = (value & 0xFFL) * ONES;
+        boolean bigEndian = bytes.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = bytes.getLong(i);
+            word = (bigEndian ? Long.reverseBytes(word) : word) ^ pattern;
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0L) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] createShifts(byte[] sequence) {
+        int[] shifts = new int[256];
+        Arrays.fill(shifts, sequence.length);
+        for (int i = 0; i < sequence.length - 1; i++) {
+            shifts[sequence[i] & 0xFF] = sequence.length - 1 - i;
+        }
+        return shifts;
+    }
+}
@@ -1,5 +1,7 @@
 package atunstall.server.io.impl.util;
 
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ByteRangeVisitor;
 import atunstall.server.io.api.ParsableByteBuffer;
 
 import java.nio.charset.Charset;
@@ -7,112 +9,91 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Consumer;
 
-public class ConcatenatedParsableByteBuffer implements ParsableByteBuffer {
+public class ConcatenatedParsableByteBuffer implements ParsableByteBuffer, Searchable, Trackable {
     private final ArrayStreamsImpl streams;
-    private final List<ParsableByteBuffer> buffers;
+    private final ParsableByteBuffer[] buffers;
+    private final long[] ends;
+    private final ChangeFlag changes;
+    private final boolean tracked;
+    private int cursor;
 
     ConcatenatedParsableByteBuffer(ArrayStreamsImpl streams, List<ParsableByteBuffer> buffers) {
         this.streams = streams;
-        this.buffers = buffers;
+        this.buffers = buffers.toArray(new ParsableByteBuffer[0]);
+        ends = new long[this.buffers.length];
+        changes = new ChangeFlag();
+        tracked = track(this.buffers, changes);
     }
 
     @Override
-    public long find(long index, byte[] sequence) {
-        ParsableByteBuffer previous = null;
-        long offset = 0L;
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                previous = current;
-                offset += current.count();
-                index -= current.count();
-                continue;
-            }
-            if (previous != null) {
-                int underflow = (int) Math.min(sequence.length - 1, previous.count() - index);
-                int overflow = (int) Math.min(sequence.length - 1, current.count());
-                if (underflow + overflow >= sequence.length) {
-                    int seqIndex = 0;
-                    byte[] buffer = new byte[underflow + overflow];
-                    previous.get(previous.count() - underflow, buffer, 0, underflow);
-                    current.get(0L, buffer, underflow, overflow);
-                    int findIndex = 0;
-                    while (seqIndex < sequence.length && findIndex <= overflow + underflow - sequence.length + seqIndex) {
-                        if (buffer[findIndex++] == sequence[seqIndex]) {
-                            seqIndex++;
-                        } else {
-                            seqIndex = 0;
-                        }
-                    }
-                    if (seqIndex == sequence.length) {
-                        return offset + findIndex - sequence.length;
-                    }
+    public long indexOf(long index, byte[] sequence) {
+        return indexOf(index, new CompiledBytePattern(sequence, false));
+    }
+
+    @Override
+    public long indexOf(long index, BytePattern pattern) {
+        validateArgs(index, 0L);
+        return search(index, count(), pattern);
+    }
+
+    @Override
+    public long search(long index, long end, BytePattern pattern) {
+        if (index >= end) {
+            return pattern.length() == 0 && index == end ? index : -1L;
+        }
+        ends();
+        for (int i = locate(index); i < buffers.length && start(i) < end; i++) {
+            long offset = start(i), currentEnd = ends[i];
+            long result = Searchable.search(buffers[i], Math.max(index, offset) - offset, Math.min(end, currentEnd) - offset, pattern);
+            if (result >= 0L) {
+                return offset + result;
+            }
+            if (currentEnd < end && pattern.length() > 1) {
+                result = pattern.indexIn(this, Math.max(index, currentEnd - pattern.length() + 1), Math.min(end, currentEnd + pattern.length() - 1));
+                if (result >= 0L) {
+                    return result;
                 }
             }
-            try {
-                return offset + current.find(index, sequence);
-            } catch (RuntimeException ignored) {}
-            previous = current;
-            offset += current.count();
-            index = 0L;
         }
-        throw new IllegalArgumentException("byte sequence not found");
+        return -1L;
     }
 
     @Override
     public boolean compare(long index, byte[] sequence) {
         if (sequence.length == 0) return true;
-        ParsableByteBuffer previous = null;
-        long previousIndex = -1L;
-        byte[] buffer = new byte[sequence.length * 2 - 1];
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                previous = current;
-                index -= current.count();
-                continue;
-            }
-            if (previous != null && previousIndex >= 0) {
-                int underflow = (int) (previous.count() - previousIndex);
-                previous.get(previousIndex, buffer, 0, underflow);
-                current.get(0L, buffer, underflow, sequence.length - underflow);
-                int findIndex = 0;
-                for (byte value : sequence) {
-                    if (buffer[findIndex++] != value) {
-                        return false;
-                    }
+        validateArgs(index, sequence.length);
+        int seqIndex = 0;
+        for (int i = locate(index); seqIndex < sequence.length; i++) {
+            long currentIndex = index + seqIndex - start(i);
+            long currentCount = Math.min(sequence.length - seqIndex, ends[i] - start(i) - currentIndex);
+            for (long j = 0L; j < currentCount; j++) {
+                if (buffers[i].get(currentIndex + j) != sequence[seqIndex++]) {
+                    return false;
                 }
-                return true;
             }
-            try {
-                return current.compare(index, sequence);
-            } catch (RuntimeException ignored) {
-                previousIndex = index;
-            }
-            previous = current;
-            index = 0L;
         }
-        return false;
+        return true;
     }
 
     @Override
     public void consume(long index, long count) {
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                index -= current.count();
-                continue;
-            }
-            long currentCount = Math.min(count, current.count() - index);
-            current.consume(index, currentCount);
-            if ((count -= currentCount) == 0) {
-                return;
-            }
-            index = 0L;
+        validateArgs(index, count);
+        if (count == 0L) return;
+        for (int i = locate(index); count > 0L; i++) {
+            long currentIndex = Math.max(index - start(i), 0L);
+            long currentCount = Math.min(count, ends[i] - start(i) - currentIndex);
+            if (currentCount > 0L) {
+                buffers[i].consume(currentIndex, currentCount);
+            }
+            count -= currentCount;
         }
-        throw new IllegalArgumentException("index out of range");
     }
 
     @Override
     public void consumeAll() {
-        buffers.forEach(ParsableByteBuffer::consumeAll);
+        for (ParsableByteBuffer buffer : buffers) {
+            buffer.consumeAll();
+        }
     }
 
     @Override
@@ -120,115 +101,153 @@ public class ConcatenatedParsableByteBuffer implements ParsableByteBuffer {
         return 0;
     }
 
+    @Override
+    public boolean track(ChangeFlag flag) {
+        return track(buffers, flag);
+    }
+
     @Override
     public ParsableByteBuffer partition(long index, long count) {
+        validateArgs(index, count);
         List<ParsableByteBuffer> partitionBuffers = new ArrayList<>();
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                index -= current.count();
-                continue;
-            }
-            long currentCount = Math.min(count, current.count() - index);
-            partitionBuffers.add(current.partition(index, currentCount));
-            if ((count -= currentCount) == 0) {
-                return streams.concatenate(partitionBuffers);
-            }
-            index = 0L;
+        if (count == 0L) {
+            return streams.concatenate(partitionBuffers);
+        }
+        for (int i = locate(index); count > 0L; i++) {
+            long currentIndex = index - start(i);
+            long currentCount = Math.min(count, ends[i] - index);
+            if (currentCount > 0L) {
+                partitionBuffers.add(buffers[i].partition(currentIndex, currentCount));
+            }
+            index += currentCount;
+            count -= currentCount;
         }
-        throw new IllegalArgumentException("index out of range");
+        return streams.concatenate(partitionBuffers);
     }
 
     @Override
     public void clear(long index, long count) {
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                index -= current.count();
-                continue;
-            }
-            long currentCount = Math.min(count, current.count() - index);
-            current.clear(index, currentCount);
-            if ((count -= currentCount) == 0L) {
-                return;
-            }
-            index = 0L;
-        }
-        if (count > 0) {
-            throw new IllegalArgumentException("index out of range");
+        validateArgs(index, count);
+        for (int i = count == 0L ? buffers.length : locate(index); count > 0L; i++) {
+            long currentCount = Math.min(count, ends[i] - index);
+            buffers[i].clear(index - start(i), currentCount);
+            index += currentCount;
+            count -= currentCount;
         }
     }
 
     @Override
     public String toString(long index, long count, Charset charset) {
+        validateArgs(index, count);
         if (count == 0L) {
             return "";
         }
-        StringBuilder result = new StringBuilder();
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                index -= current.count();
-                continue;
-            }
-            long currentCount = Math.min(count, current.count() - index);
-            result.append(current.toString(index, currentCount, charset));
-            if ((count -= currentCount) == 0) {
-                return result.toString();
-            }
-            index = 0L;
+        int i = locate(index);
+        if (ends[i] - index >= count) {
+            return buffers[i].toString(index - start(i), count, charset);
+        }
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("count is too large");
         }
-        throw new IllegalArgumentException("index out of range");
+        byte[] bytes = new byte[(int) count];
+        get(index, bytes, 0, bytes.length);
+        return new String(bytes, charset);
     }
 
     @Override
     public long count() {
-        return buffers.stream().mapToLong(ParsableByteBuffer::count).sum();
+        return buffers.length == 0 ? 0L : ends()[buffers.length - 1];
     }
 
     @Override
     public byte get(long index) {
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                index -= current.count();
-                continue;
-            }
-            return current.get(index);
-        }
-        throw new IllegalArgumentException("index out of range");
+        validateArgs(index, 1L);
+        int i = locate(index);
+        return buffers[i].get(index - start(i));
     }
 
     @Override
     public void get(long index, byte[] bytes, int offset, int count) {
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                index -= current.count();
-                continue;
-            }
-            int currentCount = (int) Math.min(count, current.count() - index);
-            current.get(index, bytes, offset, currentCount);
-            if ((count -= currentCount) == 0) {
-                return;
-            }
-            index = 0L;
-        }
-        if (count > 0) {
-            throw new IllegalArgumentException("index out of range");
+        validateArgs(index, count);
+        for (int i = count == 0 ? buffers.length : locate(index); count > 0; i++) {
+            int currentCount = (int) Math.min(count, ends[i] - index);
+            buffers[i].get(index - start(i), bytes, offset, currentCount);
+            index += currentCount;
+            offset += currentCount;
+            count -= currentCount;
         }
     }
 
     @Override
     public void apply(long index, long count, Consumer<byte[]> consumer) {
-        for (ParsableByteBuffer current : buffers) {
-            if (index >= current.count()) {
-                index -= current.count();
-                continue;
-            }
-            long currentCount = Math.min(count, current.count() - index);
-            current.apply(index, currentCount, consumer);
-            if ((count -= currentCount) == 0L) {
-                return;
+        validateArgs(index, count);
+        for (int i = count == 0L ? buffers.length : locate(index); count > 0L; i++) {
+            long currentCount = Math.min(count, ends[i] - index);
+            if (currentCount > 0L) {
+                buffers[i].apply(index - start(i), currentCount, consumer);
+            }
+            index += currentCount;
+            count -= currentCount;
+        }
+    }
+
+    @Override
+    public void visit(long index, long count, ByteRangeVisitor visitor) {
+        validateArgs(index, count);
+        for (int i = count == 0L ? buffers.length : locate(index); count > 0L; i++) {
+            long currentCount = Math.min(count, ends[i] - index);
+            if (currentCount > 0L) {
+                buffers[i].visit(index - start(i), currentCount, visitor);
+            }
+            index += currentCount;
+            count -= currentCount;
+        }
+    }
+
+    private long[] ends() {
+        // The buffers can also change through their own references or partitions, which raise the flag, but other buffers cannot report their changes
+        if (tracked && !changes.lower()) {
+            return ends;
+        }
+        long end = 0L;
+        for (int i = 0; i < buffers.length; i++) {
+            ends[i] = end += buffers[i].count();
+        }
+        return ends;
+    }
+
+    private static boolean track(ParsableByteBuffer[] buffers, ChangeFlag flag) {
+        boolean tracked = true;
+        for (ParsableByteBuffer buffer : buffers) {
+            tracked &= Trackable.track(buffer, flag);
+        }
+        return tracked;
+    }
+
+    private long start(int buffer) {
+        return buffer == 0 ? 0L : ends[buffer - 1];
+    }
+
+    private int locate(long index) {
+        if (index >= start(cursor) && index < ends[cursor]) {
+            return cursor;
+        } else if (cursor + 1 < ends.length && index >= ends[cursor] && index < ends[cursor + 1]) {
+            return ++cursor;
+        }
+        int low = 0, high = ends.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
-            index = 0L;
         }
-        if (count > 0) {
+        return cursor = low;
+    }
+
+    private void validateArgs(long index, long count) {
+        if (index < 0L || count < 0L || index + count > count()) {
             throw new IllegalArgumentException("index out of range");
         }
     }
@@ -0,0 +1,102 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.ByteRangeVisitor;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+
+public class DirectAppendableParsableByteBuffer extends DirectParsableByteBuffer implements AppendableParsableByteBuffer {
+    private static final java.nio.ByteBuffer EMPTY = java.nio.ByteBuffer.allocateDirect(0);
+
+    private final BufferPool<java.nio.ByteBuffer> pool;
+
+    DirectAppendableParsableByteBuffer(BufferPool<java.nio.ByteBuffer> pool, int length) {
+        super(pool.acquire(length));
+        this.pool = pool;
+        this.length = 0;
+        updateBackup();
+    }
+
+    @Override
+    public void append(byte[] bytes, int offset, int count) {
+        validateSize(count);
+        buffer.put(index + length, bytes, offset, count);
+        length += count;
+        updateBackup();
+    }
+
+    @Override
+    public void append(ByteBuffer buffer) {
+        int count = (int) buffer.count();
+        validateSize(count);
+        buffer.visit(0L, count, new ByteRangeVisitor() {
+            private int position = index + length;
+
+            @Override
+            public void visit(byte[] bytes, int offset, int count) {
+                DirectAppendableParsableByteBuffer.this.buffer.put(position, bytes, offset, count);
+                position += count;
+            }
+
+            @Override
+            public void visit(java.nio.ByteBuffer bytes) {
+                DirectAppendableParsableByteBuffer.this.buffer.put(position, bytes, bytes.position(), bytes.remaining());
+                position += bytes.remaining();
+            }
+        });
+        length += count;
+        updateBackup();
+    }
+
+    @Override
+    public java.nio.ByteBuffer reserve(int count) {
+        validateSize(count);
+        return buffer.slice(index + length, count);
+    }
+
+    @Override
+    public void commit(int count) {
+        if (index + length + count > buffer.capacity()) {
+            throw new ArrayIndexOutOfBoundsException("commit exceeds the reserved space");
+        }
+        length += count;
+        updateBackup();
+    }
+
+    @Override
+    public void rollback() {
+        restore();
+    }
+
+    @Override
+    public void updateBackup() {
+        checkpoint();
+    }
+
+    @Override
+    public void release() {
+        if (buffer != EMPTY) {
+            pool.release(buffer);
+            buffer = EMPTY;
+        }
+        index = length = 0;
+        checkpoint();
+    }
+
+    private void validateSize(long count) {
+        int retained = index + length - mark;
+        if (index + length + count > buffer.capacity()) {
+            if (mark > buffer.capacity() / 2 && count + retained < buffer.capacity()) {
+                move(mark, 0, retained);
+            } else {
+                java.nio.ByteBuffer newBuffer = pool.acquire((int) Math.max(retained + count, buffer.capacity() << 1));
+                newBuffer.put(0, buffer, mark, retained);
+                if (buffer != EMPTY) {
+                    pool.release(buffer);
+                }
+                buffer = newBuffer;
+            }
+            index -= mark;
+            mark = 0;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ByteRangeVisitor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+public class DirectParsableByteBuffer extends AbstractParsableByteBuffer {
+    private static final byte[] ZEROES = new byte[4096];
+
+    ByteBuffer buffer;
+
+    DirectParsableByteBuffer(ByteBuffer buffer) {
+        super(0, buffer.remaining());
+        this.buffer = buffer.slice();
+    }
+
+    @Override
+    byte read(int position) {
+        return buffer.get(position);
+    }
+
+    @Override
+    void read(int position, byte[] bytes, int offset, int count) {
+        buffer.get(position, bytes, offset, count);
+    }
+
+    @Override
+    void visit(int position, int count, ByteRangeVisitor visitor) {
+        visitor.visit(buffer.slice(position, count).asReadOnlyBuffer());
+    }
+
+    @Override
+    void write(int position, byte[] bytes, int offset, int count) {
+        buffer.put(position, bytes, offset, count);
+    }
+
+    @Override
+    void move(int from, int to, int count) {
+        if (count > 0) {
+            buffer.put(to, buffer, from, count);
+        }
+    }
+
+    @Override
+    void fill(int position, int count) {
+        while (count > 0) {
+            int filled = Math.min(count, ZEROES.length);
+            buffer.put(position, ZEROES, 0, filled);
+            position += filled;
+            count -= filled;
+        }
+    }
+
+    @Override
+    int indexIn(int from, int to, BytePattern pattern) {
+        return pattern.indexIn(buffer, from, to);
+    }
+
+    @Override
+    String decode(int position, int count, Charset charset) {
+        return charset.decode(buffer.slice(position, count)).toString();
+    }
+
+    @Override
+    void beforeWrite() {
+        if (buffer.isReadOnly()) {
+            // Copied on write, so that read-only content such as mapped files is never modified, and only the bytes still needed are copied
+            int start = retained(), end = index + length;
+            buffer = ByteBuffer.allocate(end - start).put(0, buffer, start, end - start);
+            index -= start;
+            mark = Math.max(mark - start, 0);
+        }
+    }
+}
@@ -1,26 +1,58 @@
 package atunstall.server.io.impl.util;
 
+import atunstall.server.core.api.logging.Level;
+import atunstall.server.core.api.logging.Logger;
+import atunstall.server.io.api.BufferConsumer;
 import atunstall.server.io.api.ParsableByteBuffer;
 import atunstall.server.io.api.util.AppendableParsableByteBuffer;
 import atunstall.server.io.api.util.HandledInputStream;
 
 import java.util.Deque;
 import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.function.Consumer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class HandledInputStreamImpl implements HandledInputStream {
+    private static final long DEFAULT_LOW_WATERMARK = 1L << 18;
+    private static final long DEFAULT_HIGH_WATERMARK = 1L << 20;
+
+    private final Logger logger;
     private final AutoCloseable closeCallback;
-    private Deque<Consumer<? super ParsableByteBuffer>> consumers;
-    private boolean closed;
+    private final AtomicReference<Runnable> resume;
+    private Deque<BufferConsumer> consumers;
+    private volatile boolean closed;
+    private volatile long needed;
+    private volatile long lowWatermark;
+    private volatile long highWatermark;
+    private final AtomicLong generation;
+    private volatile long consumedGeneration;
+    private volatile boolean starved;
+    private volatile boolean paused;
+    private volatile boolean demandDriven;
 
-    protected HandledInputStreamImpl(AutoCloseable closeCallback) {
+    protected HandledInputStreamImpl(Logger logger, AutoCloseable closeCallback) {
+        this.logger = logger;
         this.closeCallback = closeCallback;
+        resume = new AtomicReference<>();
+        generation = new AtomicLong(0L);
         consumers = new ConcurrentLinkedDeque<>();
+        lowWatermark = DEFAULT_LOW_WATERMARK;
+        highWatermark = DEFAULT_HIGH_WATERMARK;
     }
 
     @Override
-    public void queueConsumer(Consumer<? super ParsableByteBuffer> consumer) {
+    public void queue(BufferConsumer consumer) {
         consumers.add(consumer);
+        signal();
+    }
+
+    @Override
+    public void setWatermarks(long low, long high) {
+        HandledInputStream.super.setWatermarks(low, high);
+        lowWatermark = low;
+        highWatermark = high;
+        signal();
     }
 
     @Override
@@ -37,33 +69,55 @@ public class HandledInputStreamImpl implements HandledInputStream {
     @Override
     public void consume(ParsableByteBuffer buffer) {
         if (buffer.count() == 0L) return;
-        Consumer<? super ParsableByteBuffer> consumer;
+        BufferConsumer consumer;
         while ((consumer = consumers.peek()) != null) {
-            consumer.accept(buffer);
-            if (buffer.bytesConsumed() > 0L) {
-                break;
+            if (needed > buffer.count()) {
+                if (!isClosed()) {
+                    starved = true;
+                    return;
+                }
+                // No more data is coming, so the consumer can never make progress
+                drop(consumer);
+                continue;
+            }
+            long status;
+            try {
+                status = consumer.consume(buffer);
+            } catch (RuntimeException e) {
+                logger.log(Level.ERROR, "Consumer failed, dropping it", e);
+                drop(consumer);
+                continue;
+            }
+            if (status == BufferConsumer.DONE) {
+                next();
+                if (buffer instanceof AppendableParsableByteBuffer) {
+                    // Rolling back for the next consumer must not restore what this one consumed
+                    ((AppendableParsableByteBuffer) buffer).updateBackup();
+                }
+            } else {
+                needed = status;
+                starved = status > buffer.count();
+                return;
             }
-            consumers.remove();
         }
     }
 
     @Override
     public void consumeSafe(AppendableParsableByteBuffer buffer) {
+        consumedGeneration = generation.get();
+        starved = false;
         while (buffer.count() > 0L) {
-            try {
-                consume(buffer);
-                buffer.updateBackup();
-            } catch (RuntimeException e) {
-                System.out.println("[OI] Consumer threw exception, rolling back buffer");
-                e.printStackTrace();
-                buffer.rollback();
-                if (closed && consumers.size() > 0) {
-                    System.out.println("Stream is closed, dropping consumer and retrying");
-                    consumers.remove();
-                    continue;
-                }
+            consume(buffer);
+            if (buffer.bytesConsumed() == 0L) {
                 break;
             }
+            buffer.updateBackup();
+        }
+        if (buffer.count() == 0L && isClosed()) {
+            BufferConsumer consumer;
+            while ((consumer = consumers.poll()) != null) {
+                consumer.end();
+            }
         }
     }
 
@@ -71,4 +125,78 @@ public class HandledInputStreamImpl implements HandledInputStream {
     public int consumerCount() {
         return consumers.size();
     }
+
+    @Override
+    public boolean hasDemand(ParsableByteBuffer buffer) {
+        demandDriven = true;
+        paused = !starved && (paused ? buffer.count() > lowWatermark : buffer.count() >= highWatermark);
+        return !paused;
+    }
+
+    @Override
+    public void pause(Runnable resume) {
+        this.resume.set(resume);
+        if (generation.get() != consumedGeneration && this.resume.compareAndSet(resume, null)) {
+            resume.run();
+        }
+    }
+
+    /**
+     * Passes the buffer of a closed stream to the consumers until it is empty, then releases it.
+     * Each pass runs on the given executor, and a consumer that takes nothing in a pass is dropped since no more data is coming.
+     * @param buffer The buffer read by this stream.
+     * @param executor The executor running the passes.
+     */
+    protected synchronized void drain(AppendableParsableByteBuffer buffer, Executor executor) {
+        long count = buffer.count();
+        consumeSafe(buffer);
+        if (buffer.count() == 0L) {
+            buffer.release();
+            return;
+        }
+        BufferConsumer consumer = consumers.peek();
+        if (consumer != null && buffer.count() == count) {
+            drop(consumer);
+        }
+        if (consumerCount() > 0) {
+            executor.execute(() -> drain(buffer, executor));
+        }
+    }
+
+    /**
+     * Checks whether the source of this stream asks for demand, and so pauses until it is signalled by {@link #demand()}.
+     * @return True if the source has called {@link #hasDemand(ParsableByteBuffer)}.
+     */
+    boolean isDemandDriven() {
+        return demandDriven;
+    }
+
+    /**
+     * Resumes a paused source because a consumer that left bytes in the buffer can now take them.
+     */
+    void demand() {
+        signal();
+    }
+
+    private void drop(BufferConsumer consumer) {
+        next();
+        try {
+            consumer.end();
+        } catch (RuntimeException e) {
+            logger.log(Level.ERROR, "Consumer failed to end", e);
+        }
+    }
+
+    private void next() {
+        consumers.remove();
+        needed = 0L;
+    }
+
+    private void signal() {
+        generation.incrementAndGet();
+        Runnable task = resume.getAndSet(null);
+        if (task != null) {
+            task.run();
+        }
+    }
 }
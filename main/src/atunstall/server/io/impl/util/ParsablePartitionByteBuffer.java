@@ -0,0 +1,122 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ByteRangeVisitor;
+import atunstall.server.io.api.ParsableByteBuffer;
+
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+public class ParsablePartitionByteBuffer implements ParsableByteBuffer, Searchable, Trackable {
+    private final ParsableByteBuffer parent;
+    private final PartitionRegistry registry;
+    private final PartitionRegistry.Entry entry;
+
+    ParsablePartitionByteBuffer(ParsableByteBuffer parent, PartitionRegistry registry, long index, long count) {
+        this.parent = parent;
+        this.registry = registry;
+        entry = registry.register(this, index, count);
+    }
+
+    @Override
+    public boolean track(ChangeFlag flag) {
+        // A partition only changes along with its parent
+        registry.track(flag);
+        return true;
+    }
+
+    @Override
+    public long count() {
+        return entry.count();
+    }
+
+    @Override
+    public byte get(long index) {
+        validateArgs(index, 1L);
+        return parent.get(entry.index() + index);
+    }
+
+    @Override
+    public void get(long index, byte[] bytes, int offset, int count) {
+        validateArgs(index, count);
+        parent.get(entry.index() + index, bytes, offset, count);
+    }
+
+    @Override
+    public void apply(long index, long count, Consumer<byte[]> consumer) {
+        validateArgs(index, count);
+        parent.apply(entry.index() + index, count, consumer);
+    }
+
+    @Override
+    public void visit(long index, long count, ByteRangeVisitor visitor) {
+        validateArgs(index, count);
+        parent.visit(entry.index() + index, count, visitor);
+    }
+
+    @Override
+    public long indexOf(long index, byte[] sequence) {
+        return indexOf(index, new CompiledBytePattern(sequence, false));
+    }
+
+    @Override
+    public long indexOf(long index, BytePattern pattern) {
+        validateArgs(index, 0L);
+        return search(index, entry.count(), pattern);
+    }
+
+    @Override
+    public long search(long index, long end, BytePattern pattern) {
+        long partitionIndex = entry.index();
+        long result = Searchable.search(parent, partitionIndex + index, partitionIndex + end, pattern);
+        return result < 0L ? -1L : result - partitionIndex;
+    }
+
+    @Override
+    public boolean compare(long index, byte[] sequence) {
+        validateArgs(index, sequence.length);
+        return parent.compare(entry.index() + index, sequence);
+    }
+
+    @Override
+    public void consume(long index, long count) {
+        validateArgs(index, count);
+        parent.consume(entry.index() + index, count);
+    }
+
+    @Override
+    public void consumeAll() {
+        parent.consume(entry.index(), entry.count());
+    }
+
+    @Override
+    public long bytesConsumed() {
+        return 0;
+    }
+
+    @Override
+    public ParsableByteBuffer partition(long index, long count) {
+        validateArgs(index, count);
+        return parent.partition(entry.index() + index, count);
+    }
+
+    @Override
+    public void clear(long index, long count) {
+        validateArgs(index, count);
+        parent.clear(entry.index() + index, count);
+    }
+
+    @Override
+    public String toString(long index, long count, Charset charset) {
+        validateArgs(index, count);
+        return parent.toString(entry.index() + index, count, charset);
+    }
+
+    private void validateArgs(long index, long count) {
+        if (index + count > entry.count()) {
+            throw new ArrayIndexOutOfBoundsException("index is too large");
+        } else if (index < 0) {
+            throw new ArrayIndexOutOfBoundsException("index is negative");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package atunstall.server.io.impl.util;
 
 import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.ByteRangeVisitor;
 
 import java.util.function.Consumer;
 
@@ -38,6 +39,12 @@ public class PartitionByteBuffer implements ByteBuffer {
         parent.apply(this.index + index, count, consumer);
     }
 
+    @Override
+    public void visit(long index, long count, ByteRangeVisitor visitor) {
+        validateArgs(index, count);
+        parent.visit(this.index + index, count, visitor);
+    }
+
     @Override
     public ByteBuffer partition(long index, long count) {
         validateArgs(index, count);
@@ -0,0 +1,197 @@
+package atunstall.server.io.impl.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps track of the partitions of a buffer so that they follow the bytes they cover when the buffer is consumed.
+ * Partitions are only weakly referenced, and are stored in absolute positions ordered by their end.
+ * Consuming from the front therefore only moves the base, and other consumptions only update the partitions at or after the consumed range.
+ * Since the last checkpoint, the previous positions of updated partitions are journaled so that {@link #restore()} can put them back.
+ * The registry also raises the flags tracking the buffer whenever its count may have changed, which are weakly referenced too.
+ */
+class PartitionRegistry {
+    private final ReferenceQueue<ParsablePartitionByteBuffer> queue;
+    private Entry[] entries;
+    private int first;
+    private int size;
+    private int cleared;
+    private long base;
+    private long backupBase;
+    private Entry[] shifted;
+    private long[] shifts;
+    private int shiftCount;
+    private List<WeakReference<ChangeFlag>> flags;
+    private int flagLimit;
+
+    PartitionRegistry() {
+        queue = new ReferenceQueue<>();
+        entries = new Entry[8];
+        backupBase = -1L;
+    }
+
+    Entry register(ParsablePartitionByteBuffer partition, long index, long count) {
+        purge();
+        Entry entry = new Entry(partition, base + index, base + index + count);
+        int position = after(entry.end);
+        if (size == entries.length) {
+            if (first > 0) {
+                System.arraycopy(entries, first, entries, 0, size - first);
+                Arrays.fill(entries, size - first, size, null);
+                position -= first;
+                size -= first;
+                first = 0;
+            } else {
+                entries = Arrays.copyOf(entries, entries.length << 1);
+            }
+        }
+        System.arraycopy(entries, position, entries, position + 1, size++ - position);
+        entries[position] = entry;
+        return entry;
+    }
+
+    void track(ChangeFlag flag) {
+        if (flags == null) {
+            flags = new ArrayList<>();
+            flagLimit = 8;
+        } else if (flags.size() >= flagLimit) {
+            flags.removeIf(reference -> reference.get() == null);
+            flagLimit = Math.max(8, flags.size() << 1);
+        }
+        flags.add(new WeakReference<>(flag));
+    }
+
+    void changed() {
+        if (flags != null) {
+            for (WeakReference<ChangeFlag> reference : flags) {
+                ChangeFlag flag = reference.get();
+                if (flag != null) {
+                    flag.raise();
+                }
+            }
+        }
+    }
+
+    void onConsume(long index, long count) {
+        if (count == 0L) {
+            return;
+        }
+        changed();
+        purge();
+        if (index == 0L) {
+            base += count;
+            drop(backupBase < 0L ? base : backupBase);
+            return;
+        }
+        long from = base + index, to = from + count;
+        for (int i = after(from); i < size; i++) {
+            Entry entry = entries[i];
+            journal(entry);
+            entry.start = shift(entry.start, from, to);
+            entry.end = shift(entry.end, from, to);
+        }
+    }
+
+    void checkpoint() {
+        // Appends are followed by a checkpoint, so this is where they are reported
+        changed();
+        backupBase = base;
+        drop(base);
+        clearJournal();
+    }
+
+    void restore() {
+        changed();
+        if (backupBase >= 0L) {
+            base = backupBase;
+        }
+        while (shiftCount > 0) {
+            Entry entry = shifted[--shiftCount];
+            shifted[shiftCount] = null;
+            entry.start = shifts[shiftCount << 1];
+            entry.end = shifts[(shiftCount << 1) + 1];
+        }
+    }
+
+    private void journal(Entry entry) {
+        if (backupBase < 0L) {
+            return;
+        }
+        if (shifted == null || shiftCount == shifted.length) {
+            shifted = shifted == null ? new Entry[8] : Arrays.copyOf(shifted, shifted.length << 1);
+            shifts = Arrays.copyOf(shifts == null ? new long[0] : shifts, shifted.length << 1);
+        }
+        shifts[shiftCount << 1] = entry.start;
+        shifts[(shiftCount << 1) + 1] = entry.end;
+        shifted[shiftCount++] = entry;
+    }
+
+    private void clearJournal() {
+        if (shiftCount > 0) {
+            Arrays.fill(shifted, 0, shiftCount, null);
+            shiftCount = 0;
+        }
+    }
+
+    private void drop(long floor) {
+        while (first < size && entries[first].end <= floor) {
+            entries[first++] = null;
+        }
+    }
+
+    private void purge() {
+        while (queue.poll() != null) {
+            cleared++;
+        }
+        if (cleared > 16 && cleared > (size - first) / 2) {
+            int live = 0;
+            for (int i = first; i < size; i++) {
+                if (entries[i].get() != null) {
+                    entries[live++] = entries[i];
+                }
+            }
+            Arrays.fill(entries, live, size, null);
+            first = cleared = 0;
+            size = live;
+        }
+    }
+
+    private int after(long position) {
+        int low = first, high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries[middle].end <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long shift(long position, long from, long to) {
+        return position <= from ? position : position <= to ? from : position - (to - from);
+    }
+
+    final class Entry extends WeakReference<ParsablePartitionByteBuffer> {
+        private long start;
+        private long end;
+
+        private Entry(ParsablePartitionByteBuffer partition, long start, long end) {
+            super(partition, queue);
+            this.start = start;
+            this.end = end;
+        }
+
+        long index() {
+            return Math.max(start, base) - base;
+        }
+
+        long count() {
+            return Math.max(end - Math.max(start, base), 0L);
+        }
+    }
+}
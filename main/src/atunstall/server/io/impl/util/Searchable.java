@@ -0,0 +1,22 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.BytePattern;
+
+/**
+ * Implemented by buffers that can search their storage directly.
+ */
+interface Searchable {
+    /**
+     * Finds the first occurrence of the pattern that lies entirely within the given index range.
+     * @return The index of the occurrence, or -1 if there is none.
+     */
+    long search(long index, long end, BytePattern pattern);
+
+    static long search(ByteBuffer buffer, long index, long end, BytePattern pattern) {
+        if (buffer instanceof Searchable) {
+            return ((Searchable) buffer).search(index, end, pattern);
+        }
+        return pattern.indexIn(buffer, index, end);
+    }
+}
@@ -0,0 +1,448 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ByteRangeVisitor;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Appendable buffer stored as a list of pooled chunks.
+ * Positions are absolute since the creation of the buffer, so consuming bytes from the front only moves the head.
+ */
+public class SegmentedAppendableParsableByteBuffer implements AppendableParsableByteBuffer, Searchable, Trackable {
+    private final BufferPool<byte[]> pool;
+    private final int chunkSize;
+    private final PartitionRegistry partitions;
+    private List<Segment> segments;
+    private List<Segment> snapshot;
+    private int released;
+    private int first;
+    private int cursor;
+    private long head;
+    private long end;
+    private int backupFirst;
+    private long backupHead;
+    private long consumed;
+
+    SegmentedAppendableParsableByteBuffer(BufferPool<byte[]> pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        partitions = new PartitionRegistry();
+        segments = new ArrayList<>();
+    }
+
+    @Override
+    public long count() {
+        return end - head;
+    }
+
+    @Override
+    public byte get(long index) {
+        validateArgs(index, 1L);
+        long position = head + index;
+        Segment segment = segments.get(locate(position));
+        return segment.chunk.array[segment.offset + (int) (position - segment.start)];
+    }
+
+    @Override
+    public void get(long index, byte[] bytes, int offset, int count) {
+        validateArgs(index, count);
+        long position = head + index;
+        for (int i = locate(position); count > 0; i++) {
+            Segment segment = segments.get(i);
+            int segmentOffset = (int) (position - segment.start);
+            int read = Math.min(count, segment.length - segmentOffset);
+            System.arraycopy(segment.chunk.array, segment.offset + segmentOffset, bytes, offset, read);
+            position += read;
+            offset += read;
+            count -= read;
+        }
+    }
+
+    @Override
+    public void apply(long index, long count, Consumer<byte[]> consumer) {
+        validateArgs(index, count);
+        long position = head + index;
+        for (int i = locate(position); count > 0L; i++) {
+            Segment segment = segments.get(i);
+            int segmentOffset = (int) (position - segment.start);
+            int read = (int) Math.min(count, segment.length - segmentOffset);
+            consumer.accept(Arrays.copyOfRange(segment.chunk.array, segment.offset + segmentOffset, segment.offset + segmentOffset + read));
+            position += read;
+            count -= read;
+        }
+    }
+
+    @Override
+    public void visit(long index, long count, ByteRangeVisitor visitor) {
+        validateArgs(index, count);
+        long position = head + index;
+        for (int i = locate(position); count > 0L; i++) {
+            Segment segment = segments.get(i);
+            int segmentOffset = (int) (position - segment.start);
+            int read = (int) Math.min(count, segment.length - segmentOffset);
+            visitor.visit(segment.chunk.array, segment.offset + segmentOffset, read);
+            position += read;
+            count -= read;
+        }
+    }
+
+    @Override
+    public long indexOf(long index, byte[] sequence) {
+        return indexOf(index, new CompiledBytePattern(sequence, false));
+    }
+
+    @Override
+    public long indexOf(long index, BytePattern pattern) {
+        validateArgs(index, 0L);
+        return search(index, count(), pattern);
+    }
+
+    @Override
+    public long search(long index, long end, BytePattern pattern) {
+        long position = head + index, limit = head + end;
+        for (int i = locate(position); position < limit; i++) {
+            Segment segment = segments.get(i);
+            long segmentEnd = Math.min(segment.start + segment.length, limit);
+            int result = pattern.indexIn(segment.chunk.array, segment.offset + (int) (position - segment.start), segment.offset + (int) (segmentEnd - segment.start));
+            if (result >= 0) {
+                return segment.start + result - segment.offset - head;
+            }
+            if (segmentEnd < limit && pattern.length() > 1) {
+                long boundary = segmentEnd - head;
+                long straddling = pattern.indexIn(this, Math.max(index, boundary - pattern.length() + 1), Math.min(end, boundary + pattern.length() - 1));
+                if (straddling >= 0L) {
+                    return straddling;
+                }
+            }
+            position = segmentEnd;
+        }
+        return -1L;
+    }
+
+    @Override
+    public boolean compare(long index, byte[] sequence) {
+        validateArgs(index, sequence.length);
+        long position = head + index;
+        int seqIndex = 0;
+        for (int i = locate(position); seqIndex < sequence.length; i++) {
+            Segment segment = segments.get(i);
+            byte[] array = segment.chunk.array;
+            int arrayIndex = segment.offset + (int) (position - segment.start);
+            int arrayEnd = segment.offset + segment.length;
+            while (arrayIndex < arrayEnd && seqIndex < sequence.length) {
+                if (array[arrayIndex++] != sequence[seqIndex++]) {
+                    return false;
+                }
+            }
+            position = segment.start + segment.length;
+        }
+        return true;
+    }
+
+    @Override
+    public void consume(long index, long count) {
+        validateArgs(index, count);
+        if (count == 0L) return;
+        consumed += count;
+        if (index == 0L) {
+            head += count;
+            while (first < segments.size() - 1 && segments.get(first).start + segments.get(first).length <= head) {
+                first++;
+            }
+        } else {
+            if (snapshot == null) {
+                snapshot = new ArrayList<>(segments.size() - backupFirst);
+                for (Segment segment : segments.subList(backupFirst, segments.size())) {
+                    snapshot.add(segment.copy());
+                }
+            }
+            cut(head + index, count);
+        }
+        partitions.onConsume(index, count);
+    }
+
+    @Override
+    public void consumeAll() {
+        consume(0L, count());
+    }
+
+    @Override
+    public long bytesConsumed() {
+        return consumed;
+    }
+
+    @Override
+    public boolean track(ChangeFlag flag) {
+        partitions.track(flag);
+        return true;
+    }
+
+    @Override
+    public ParsableByteBuffer partition(long index, long count) {
+        validateArgs(index, count);
+        return new ParsablePartitionByteBuffer(this, partitions, index, count);
+    }
+
+    @Override
+    public void clear(long index, long count) {
+        validateArgs(index, count);
+        long position = head + index;
+        for (int i = locate(position); count > 0L; i++) {
+            Segment segment = segments.get(i);
+            int segmentOffset = (int) (position - segment.start);
+            int cleared = (int) Math.min(count, segment.length - segmentOffset);
+            Arrays.fill(segment.chunk.array, segment.offset + segmentOffset, segment.offset + segmentOffset + cleared, (byte) 0);
+            position += cleared;
+            count -= cleared;
+        }
+    }
+
+    @Override
+    public String toString(long index, long count, Charset charset) {
+        if (count > Integer.MAX_VALUE) {
+            throw new ArrayIndexOutOfBoundsException("count is too large");
+        }
+        validateArgs(index, count);
+        if (count == 0L) {
+            return "";
+        }
+        long position = head + index;
+        Segment segment = segments.get(locate(position));
+        int segmentOffset = (int) (position - segment.start);
+        if (segment.length - segmentOffset >= count) {
+            return new String(segment.chunk.array, segment.offset + segmentOffset, (int) count, charset);
+        }
+        byte[] bytes = new byte[(int) count];
+        get(index, bytes, 0, bytes.length);
+        return new String(bytes, charset);
+    }
+
+    @Override
+    public void append(byte[] bytes, int offset, int count) {
+        while (count > 0) {
+            Segment tail = tail(1);
+            int written = Math.min(count, tail.chunk.array.length - tail.offset - tail.length);
+            System.arraycopy(bytes, offset, tail.chunk.array, tail.offset + tail.length, written);
+            tail.length += written;
+            end += written;
+            offset += written;
+            count -= written;
+        }
+        updateBackup();
+    }
+
+    @Override
+    public void append(ByteBuffer buffer) {
+        long count = buffer.count();
+        long index = 0L;
+        while (index < count) {
+            Segment tail = tail(1);
+            int written = (int) Math.min(count - index, tail.chunk.array.length - tail.offset - tail.length);
+            buffer.get(index, tail.chunk.array, tail.offset + tail.length, written);
+            tail.length += written;
+            end += written;
+            index += written;
+        }
+        updateBackup();
+    }
+
+    @Override
+    public java.nio.ByteBuffer reserve(int count) {
+        Segment tail = tail(count);
+        return java.nio.ByteBuffer.wrap(tail.chunk.array, tail.offset + tail.length, count).slice();
+    }
+
+    @Override
+    public void commit(int count) {
+        Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || tail.offset + tail.length + count > tail.chunk.array.length) {
+            throw new ArrayIndexOutOfBoundsException("commit exceeds the reserved space");
+        }
+        tail.length += count;
+        end += count;
+        updateBackup();
+    }
+
+    @Override
+    public void rollback() {
+        if (snapshot != null) {
+            List<Segment> current = segments.subList(backupFirst, segments.size());
+            current.forEach(Segment::release);
+            current.clear();
+            segments.addAll(snapshot);
+            snapshot = null;
+            Segment tail = segments.get(segments.size() - 1);
+            end = tail.start + tail.length;
+        }
+        head = backupHead;
+        first = backupFirst;
+        cursor = first;
+        partitions.restore();
+        reset();
+    }
+
+    @Override
+    public void updateBackup() {
+        if (snapshot != null) {
+            snapshot.forEach(Segment::release);
+            snapshot = null;
+        }
+        for (; released < first; released++) {
+            segments.get(released).release();
+            segments.set(released, null);
+        }
+        if (released > 16 && released > segments.size() / 2) {
+            segments = new ArrayList<>(segments.subList(released, segments.size()));
+            first -= released;
+            released = 0;
+        }
+        cursor = first;
+        backupFirst = first;
+        backupHead = head;
+        partitions.checkpoint();
+        reset();
+    }
+
+    @Override
+    public void release() {
+        if (snapshot != null) {
+            snapshot.forEach(Segment::release);
+            snapshot = null;
+        }
+        for (Segment segment : segments.subList(released, segments.size())) {
+            segment.release();
+        }
+        segments.clear();
+        released = first = cursor = backupFirst = 0;
+        head = end = backupHead = 0L;
+        partitions.changed();
+        reset();
+    }
+
+    private void reset() {
+        consumed = 0L;
+    }
+
+    private Segment tail(int space) {
+        Segment tail = segments.size() > first ? segments.get(segments.size() - 1) : null;
+        if (tail == null || tail.chunk.array.length - tail.offset - tail.length < space) {
+            tail = new Segment(new Chunk(pool.acquire(Math.max(chunkSize, space))), 0, 0, end);
+            segments.add(tail);
+        }
+        return tail;
+    }
+
+    private int locate(long position) {
+        if (position >= end) {
+            return segments.size();
+        }
+        Segment segment = segments.get(cursor);
+        if (position >= segment.start && position < segment.start + segment.length) {
+            return cursor;
+        }
+        if (cursor + 1 < segments.size()) {
+            segment = segments.get(cursor + 1);
+            if (position >= segment.start && position < segment.start + segment.length) {
+                return ++cursor;
+            }
+        }
+        int low = first, high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).start <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return cursor = low;
+    }
+
+    private void cut(long from, long count) {
+        long to = from + count;
+        List<Segment> tail = segments.subList(first, segments.size());
+        List<Segment> result = new ArrayList<>(tail.size() + 1);
+        for (Segment segment : tail) {
+            long start = segment.start, segmentEnd = start + segment.length;
+            if (segmentEnd <= from) {
+                result.add(segment);
+            } else if (start >= to) {
+                segment.start -= count;
+                result.add(segment);
+            } else {
+                if (segmentEnd > to) {
+                    Segment right = segment.copy();
+                    right.offset += (int) (to - start);
+                    right.length = (int) (segmentEnd - to);
+                    right.start = from;
+                    if (start < from) {
+                        segment.length = (int) (from - start);
+                        result.add(segment);
+                    } else {
+                        segment.release();
+                    }
+                    result.add(right);
+                } else if (start < from) {
+                    segment.length = (int) (from - start);
+                    result.add(segment);
+                } else {
+                    segment.release();
+                }
+            }
+        }
+        tail.clear();
+        segments.addAll(result);
+        end -= count;
+        cursor = first;
+    }
+
+    private void validateArgs(long index, long count) {
+        if (index + count > end - head || index + count < 0L) {
+            throw new ArrayIndexOutOfBoundsException("index is too large");
+        } else if (index < 0L || count < 0L) {
+            throw new ArrayIndexOutOfBoundsException("index is negative");
+        }
+    }
+
+    private static final class Chunk {
+        private final byte[] array;
+        private int references;
+
+        private Chunk(byte[] array) {
+            this.array = array;
+        }
+    }
+
+    private final class Segment {
+        private final Chunk chunk;
+        private int offset;
+        private int length;
+        private long start;
+
+        private Segment(Chunk chunk, int offset, int length, long start) {
+            this.chunk = chunk;
+            this.offset = offset;
+            this.length = length;
+            this.start = start;
+            chunk.references++;
+        }
+
+        private Segment copy() {
+            return new Segment(chunk, offset, length, start);
+        }
+
+        private void release() {
+            if (--chunk.references == 0) {
+                pool.release(chunk.array);
+            }
+        }
+    }
+}
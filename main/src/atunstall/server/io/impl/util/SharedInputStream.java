@@ -0,0 +1,84 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.core.api.logging.Logger;
+import atunstall.server.io.api.BufferConsumer;
+import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.InputStream;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Input stream that passes content already held in memory to its consumers without copying it.
+ * The content may be shared by several streams at once, so it is only copied if a consumer consumes bytes that are not at either end of the buffer.
+ */
+public class SharedInputStream extends HandledInputStreamImpl implements InputStream {
+    private final Executor executor;
+    private final SharedBuffer buffer;
+
+    public SharedInputStream(Logger logger, java.nio.ByteBuffer content, Executor executor) {
+        super(logger, null);
+        this.executor = executor;
+        buffer = new SharedBuffer(content.asReadOnlyBuffer());
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the content is reclaimed once no stream refers to it
+    }
+
+    @Override
+    public boolean isClosed() {
+        // Every byte is already buffered
+        return true;
+    }
+
+    @Override
+    public void queue(BufferConsumer consumer) {
+        super.queue(consumer);
+        executor.execute(() -> drain(buffer, executor));
+    }
+
+    private static class SharedBuffer extends DirectParsableByteBuffer implements AppendableParsableByteBuffer {
+        private SharedBuffer(java.nio.ByteBuffer content) {
+            super(content);
+            updateBackup();
+        }
+
+        @Override
+        public void append(byte[] bytes, int offset, int count) {
+            throw new UnsupportedOperationException("shared content cannot be appended to");
+        }
+
+        @Override
+        public void append(ByteBuffer buffer) {
+            throw new UnsupportedOperationException("shared content cannot be appended to");
+        }
+
+        @Override
+        public java.nio.ByteBuffer reserve(int count) {
+            throw new UnsupportedOperationException("shared content cannot be appended to");
+        }
+
+        @Override
+        public void commit(int count) {
+            throw new UnsupportedOperationException("shared content cannot be appended to");
+        }
+
+        @Override
+        public void rollback() {
+            restore();
+        }
+
+        @Override
+        public void updateBackup() {
+            checkpoint();
+        }
+
+        @Override
+        public void release() {
+            index = length = 0;
+            checkpoint();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.api.ByteBuffer;
+
+/**
+ * Implemented by buffers that can report changes of their count.
+ */
+interface Trackable {
+    /**
+     * Raises the given flag whenever the count of this buffer may have changed.
+     * @return False if some of the storage cannot report its changes, in which case the flag must be treated as always raised.
+     */
+    boolean track(ChangeFlag flag);
+
+    static boolean track(ByteBuffer buffer, ChangeFlag flag) {
+        return buffer instanceof Trackable && ((Trackable) buffer).track(flag);
+    }
+}
@@ -1,52 +1,286 @@
 package atunstall.server.io.impl.util;
 
+import atunstall.server.io.api.BufferConsumer;
 import atunstall.server.io.api.InputStream;
 import atunstall.server.io.api.ParsableByteBuffer;
 import atunstall.server.io.api.util.AppendableParsableByteBuffer;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bridges an asynchronous input stream to a Java input stream through a bounded single-producer single-consumer ring.
+ * The stream's consumer is the only writer and the reading thread is the only reader, so neither side takes a lock unless bytes are spilled.
+ * While the ring is full, the consumer stays at the head of the stream's queue and leaves the rest in the stream's buffer, so the stream stops reading once its own buffer reaches its high watermark.
+ * The reader signals demand to the stream once it has emptied half of the ring.
+ * Streams that cannot be paused and resumed this way, or that have already closed, never read the held bytes again, so those are spilled into an overflow buffer that the reader drains once the ring is empty.
+ */
 public class WrappedInputStream extends java.io.InputStream {
-    private final AppendableParsableByteBuffer buffer;
+    private static final int CAPACITY = 1 << 16;
+
+    private final ArrayStreamsImpl streams;
+    private final InputStream stream;
+    private final Source source;
+    private final byte[] ring;
+    private final int mask;
+    private final AtomicInteger owners;
+    private final AtomicBoolean suspended;
+    private final AppendableParsableByteBuffer overflow;
+    private volatile boolean spilled;
+    private volatile long head;
+    private volatile long tail;
+    private volatile boolean ended;
+    private volatile boolean closed;
+    private volatile Thread reader;
 
-    WrappedInputStream(InputStream stream) {
-        buffer = new ArrayAppendableParsableByteBuffer(4096);
-        stream.queueConsumer(this::read);
+    WrappedInputStream(ArrayStreamsImpl streams, InputStream stream) {
+        this.streams = streams;
+        this.stream = stream;
+        source = new Source();
+        ring = streams.acquire(CAPACITY);
+        mask = Integer.highestOneBit(ring.length) - 1;
+        owners = new AtomicInteger(2);
+        suspended = new AtomicBoolean();
+        overflow = streams.createSegmentedByteBuffer(CAPACITY);
+        stream.queue(source);
     }
 
     @Override
-    public int read() {
-        int value;
-        synchronized (buffer) {
-            while (buffer.count() <= 0L) {
-                try {
-                    buffer.wait();
-                } catch (InterruptedException ignored) {}
-            }
-            value = buffer.get(0L);
-            buffer.consume(0L, 1L);
+    public int read() throws IOException {
+        if (await() == 0L) {
+            return -1;
         }
+        long head = this.head;
+        int value = ring[(int) head & mask] & 0xFF;
+        advance(head + 1L);
         return value;
     }
 
     @Override
-    public int read(byte[] b, int off, int len) {
-        synchronized (buffer) {
-            while (buffer.count() <= 0L) {
-                try {
-                    buffer.wait();
-                } catch (InterruptedException ignored) {}
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        long available = await();
+        if (available == 0L) {
+            return -1;
+        }
+        long head = this.head;
+        len = (int) Math.min(len, available);
+        int position = (int) head & mask;
+        int first = Math.min(len, mask + 1 - position);
+        System.arraycopy(ring, position, b, off, first);
+        System.arraycopy(ring, 0, b, off + first, len - first);
+        advance(head + len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0L) {
+            return 0L;
+        }
+        long available = await();
+        long skipped = Math.min(n, available);
+        advance(head + skipped);
+        return skipped;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long transferred = 0L, available;
+        while ((available = await()) > 0L) {
+            long head = this.head;
+            int position = (int) head & mask;
+            int count = (int) Math.min(available, mask + 1 - position);
+            out.write(ring, position, count);
+            advance(head + count);
+            transferred += count;
+        }
+        return transferred;
+    }
+
+    @Override
+    public int available() {
+        return (int) (tail - head);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            LockSupport.unpark(reader);
+            synchronized (overflow) {
+                overflow.release();
+                spilled = false;
+            }
+            // The suspended consumer must run once more to discard the rest of the stream
+            resume();
+            disown();
+        }
+    }
+
+    /**
+     * Waits until the ring contains data or the stream has ended.
+     * @return The number of readable bytes, which is only 0 at the end of the stream.
+     */
+    private long await() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+        long available = tail - head;
+        if (available > 0L) {
+            return available;
+        }
+        reader = Thread.currentThread();
+        try {
+            while ((available = tail - head) == 0L) {
+                // The tail and the overflow are published before the end, so they must be read again
+                boolean ended = this.ended;
+                if (closed) {
+                    throw new IOException("stream closed");
+                } else if (spilled) {
+                    refill();
+                    continue;
+                } else if (ended) {
+                    return tail - head;
+                }
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for data");
+                }
+            }
+        } finally {
+            reader = null;
+        }
+        return available;
+    }
+
+    private void advance(long head) {
+        this.head = head;
+        if (suspended.get() && hasRoom()) {
+            resume();
+        }
+    }
+
+    private boolean hasRoom() {
+        return mask + 1 - (tail - head) >= (mask + 1) >> 1;
+    }
+
+    private void resume() {
+        if (suspended.compareAndSet(true, false)) {
+            ((HandledInputStreamImpl) stream).demand();
+        }
+    }
+
+    /**
+     * Moves spilled bytes into the ring, which must be empty so that the consumer is not writing to it.
+     */
+    private void refill() {
+        synchronized (overflow) {
+            long tail = this.tail;
+            int count = (int) Math.min(mask + 1, overflow.count());
+            int position = (int) tail & mask;
+            int first = Math.min(count, mask + 1 - position);
+            overflow.get(0L, ring, position, first);
+            overflow.get(first, ring, 0, count - first);
+            overflow.consume(0L, count);
+            this.tail = tail + count;
+            if (overflow.count() == 0L) {
+                overflow.release();
+                spilled = false;
+            } else {
+                overflow.updateBackup();
             }
-            len = (int) Math.min(len, buffer.count());
-            buffer.get(0L, b, off, len);
-            buffer.consume(0L, len);
-            return len;
         }
     }
 
-    private void read(ParsableByteBuffer buffer) {
-        synchronized (this.buffer) {
-            this.buffer.append(buffer);
-            this.buffer.notifyAll();
+    /**
+     * Checks whether the stream will pass its buffer to the consumer again once the reader signals demand.
+     */
+    private boolean canHold() {
+        return stream instanceof HandledInputStreamImpl && ((HandledInputStreamImpl) stream).isDemandDriven() && !stream.isClosed();
+    }
+
+    private void disown() {
+        if (owners.decrementAndGet() == 0) {
+            streams.release(ring);
+        }
+    }
+
+    private class Source implements BufferConsumer {
+        @Override
+        public long consume(ParsableByteBuffer buffer) {
+            if (spilled && spill(buffer, false)) {
+                return closed ? discard(buffer) : CONSUMED;
+            }
+            while (buffer.count() > 0L) {
+                long tail = WrappedInputStream.this.tail;
+                int free = (int) (mask + 1 - (tail - head));
+                if (closed) {
+                    return discard(buffer);
+                } else if (free == 0 && canHold()) {
+                    // Parking would hold on to one of the stream's threads, so this keeps the rest in the stream's buffer until the reader signals demand
+                    suspended.set(true);
+                    if (!hasRoom() || !suspended.compareAndSet(true, false)) {
+                        return CONSUMED;
+                    }
+                    continue;
+                } else if (free == 0) {
+                    spill(buffer, true);
+                    LockSupport.unpark(reader);
+                    return closed ? discard(buffer) : CONSUMED;
+                }
+                int count = (int) Math.min(free, buffer.count());
+                int position = (int) tail & mask;
+                int first = Math.min(count, mask + 1 - position);
+                buffer.get(0L, ring, position, first);
+                buffer.get(first, ring, 0, count - first);
+                buffer.consume(0L, count);
+                WrappedInputStream.this.tail = tail + count;
+                LockSupport.unpark(reader);
+            }
+            return CONSUMED;
+        }
+
+        /**
+         * Appends the buffer to the overflow.
+         * @param buffer The buffer to spill.
+         * @param start Whether to start spilling, as opposed to only spilling if the overflow still holds bytes.
+         * @return True if the buffer was spilled.
+         */
+        private boolean spill(ParsableByteBuffer buffer, boolean start) {
+            synchronized (overflow) {
+                if (closed || !(start || spilled)) {
+                    return false;
+                }
+                overflow.append(buffer);
+                buffer.consumeAll();
+                spilled = true;
+                return true;
+            }
+        }
+
+        private long discard(ParsableByteBuffer buffer) {
+            buffer.consumeAll();
+            end();
+            return DONE;
+        }
+
+        @Override
+        public void end() {
+            if (!ended) {
+                ended = true;
+                LockSupport.unpark(reader);
+                disown();
+            }
         }
-        buffer.consumeAll();
     }
 }
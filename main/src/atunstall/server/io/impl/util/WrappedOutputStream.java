@@ -1,45 +1,124 @@
 package atunstall.server.io.impl.util;
 
 import atunstall.server.io.api.OutputStream;
-import atunstall.server.io.api.util.AppendableParsableByteBuffer;
 
-public class WrappedOutputStream extends java.io.OutputStream {
-    private static final int BUFFER_SIZE = 4096;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
+/**
+ * Combines writes into batches that are passed to the asynchronous stream without being copied.
+ * Two batches are used, so that writes fill one while the other is being accepted by the stream on one of the module's threads.
+ * The stream must therefore not keep a reference to the buffer it is given once it has accepted it.
+ */
+public class WrappedOutputStream extends java.io.OutputStream {
+    private final ArrayStreamsImpl streams;
     private final OutputStream stream;
-    private final AppendableParsableByteBuffer buffer;
-    private final byte[] rawBuffer;
+    private final Executor executor;
+    private byte[] current;
+    private byte[] spare;
     private int index;
+    private CompletableFuture<Void> pending;
+    private boolean closed;
 
-    WrappedOutputStream(OutputStream stream) {
+    WrappedOutputStream(ArrayStreamsImpl streams, OutputStream stream, int bufferSize, Executor executor) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        this.streams = streams;
         this.stream = stream;
-        buffer = new ArrayAppendableParsableByteBuffer(BUFFER_SIZE);
-        rawBuffer = new byte[BUFFER_SIZE];
+        this.executor = executor;
+        current = streams.acquire(bufferSize);
+        spare = streams.acquire(bufferSize);
         index = 0;
+        pending = CompletableFuture.completedFuture(null);
     }
 
     @Override
-    public void write(int b) {
-        synchronized (buffer) {
-            if (index >= rawBuffer.length) flush();
-            rawBuffer[index++] = (byte) b;
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (index == current.length) {
+            handOff();
         }
+        current[index++] = (byte) b;
     }
 
     @Override
-    public void write(byte[] b, int off, int len) {
-        synchronized (buffer) {
-            buffer.append(b, off, len);
-            if (buffer.count() > BUFFER_SIZE) flush();
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        if (len >= current.length) {
+            // Too large to batch, so the caller's array is passed directly once everything before it has been accepted
+            handOff();
+            await();
+            try {
+                send(b, off, len);
+            } catch (RuntimeException e) {
+                throw new IOException("failed to write to the stream", e);
+            }
+            return;
         }
+        int count = Math.min(len, current.length - index);
+        System.arraycopy(b, off, current, index, count);
+        index += count;
+        if (count < len) {
+            handOff();
+            System.arraycopy(b, off + count, current, 0, len - count);
+            index = len - count;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        handOff();
+        await();
     }
 
     @Override
-    public void flush() {
-        synchronized (buffer) {
-            buffer.append(rawBuffer, 0, index);
-            stream.toParsableBufferConsumer().accept(buffer);
-            index = 0;
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        try {
+            flush();
+        } finally {
+            closed = true;
+            streams.release(current);
+            streams.release(spare);
+            current = spare = null;
+        }
+    }
+
+    private void handOff() throws IOException {
+        await();
+        if (index == 0) {
+            return;
+        }
+        byte[] batch = current;
+        int count = index;
+        current = spare;
+        spare = batch;
+        index = 0;
+        pending = CompletableFuture.runAsync(() -> send(batch, 0, count), executor);
+    }
+
+    private void await() throws IOException {
+        try {
+            pending.join();
+        } catch (CompletionException e) {
+            pending = CompletableFuture.completedFuture(null);
+            throw new IOException("failed to write to the stream", e.getCause());
+        }
+    }
+
+    private void send(byte[] bytes, int offset, int count) {
+        stream.accept(streams.createPartition(new ArrayByteBuffer(bytes), offset, count));
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
         }
     }
 }
@@ -0,0 +1,43 @@
+package atunstall.server.io;
+
+import atunstall.server.core.api.logging.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Logger for tests that keeps the exceptions it is given, as well as those of its children.
+ */
+public final class RecordingLogger implements InvocationHandler {
+    private final Logger logger;
+    private final List<Throwable> errors;
+
+    public RecordingLogger() {
+        logger = (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] {Logger.class}, this);
+        errors = new CopyOnWriteArrayList<>();
+    }
+
+    public Logger logger() {
+        return logger;
+    }
+
+    public List<Throwable> errors() {
+        return errors;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getReturnType() == Logger.class) {
+            return logger;
+        } else if (method.getDeclaringClass() == Object.class) {
+            return method.getName().equals("equals") ? proxy == args[0] : method.getName().equals("hashCode") ? System.identityHashCode(proxy) : "RecordingLogger";
+        }
+        if (args != null && args.length > 0 && args[args.length - 1] instanceof Throwable) {
+            errors.add((Throwable) args[args.length - 1]);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,76 @@
+package atunstall.server.io.api;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import atunstall.server.io.impl.util.ArrayStreamsImpl;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParsableByteBufferTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void indexOfReturnsMinusOneWhenMissing() {
+        ParsableByteBuffer buffer = buffer("a,b,c");
+        assertEquals(1L, buffer.indexOf(0L, bytes(",")));
+        assertEquals(3L, buffer.indexOf(2L, bytes(",")));
+        assertEquals(-1L, buffer.indexOf(4L, bytes(",")));
+        assertEquals(-1L, buffer.indexOf(0L, streams.createPattern(bytes(";"))));
+    }
+
+    @Test
+    void findThrowsWhenMissing() {
+        ParsableByteBuffer buffer = buffer("a,b");
+        assertEquals(1L, buffer.find(0L, bytes(",")));
+        assertThrows(IllegalStateException.class, () -> buffer.find(2L, bytes(",")));
+        assertThrows(IllegalStateException.class, () -> buffer.find(0L, streams.createPattern(bytes(";"))));
+    }
+
+    @Test
+    void splitsAroundSequencesAndPatterns() {
+        ParsableByteBuffer buffer = buffer("a\r\n\r\nbc\r\n\r\n\r\n\r\n");
+        List<String> expected = List.of("a", "bc", "", "");
+        assertEquals(expected, strings(buffer.split(bytes("\r\n\r\n"))));
+        assertEquals(expected, strings(buffer.split(streams.createPattern(bytes("\r\n\r\n")))));
+        assertEquals(List.of("abc"), strings(buffer("abc").split(bytes(","))));
+    }
+
+    @Test
+    void tokensCanBeStoppedEarly() {
+        ParsableByteBuffer buffer = buffer("one,two,three,four");
+        Spliterator<ParsableByteBuffer> tokens = buffer.tokens(streams.createPattern(bytes(",")));
+        StringBuilder first = new StringBuilder();
+        tokens.tryAdvance(token -> first.append(string(token)));
+        assertEquals("one", first.toString());
+        List<String> rest = StreamSupport.stream(tokens, false).map(ParsableByteBufferTest::string).collect(Collectors.toList());
+        assertEquals(List.of("two", "three", "four"), rest);
+        assertEquals(List.of("one", "two"), StreamSupport.stream(buffer.tokens(streams.createPattern(bytes(","))), false)
+                .limit(2L).map(ParsableByteBufferTest::string).collect(Collectors.toList()));
+    }
+
+    private ParsableByteBuffer buffer(String content) {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(content.length());
+        buffer.append(bytes(content), 0, content.length());
+        return buffer;
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static List<String> strings(List<ParsableByteBuffer> buffers) {
+        return buffers.stream().map(ParsableByteBufferTest::string).collect(Collectors.toList());
+    }
+
+    private static String string(ParsableByteBuffer buffer) {
+        return buffer.toString(0L, buffer.count(), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,85 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.OutputStream;
+import atunstall.server.io.impl.util.ArrayStreamsImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttributeCacheTest {
+    private final RecordingLogger logger = new RecordingLogger();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAttributesOnce() throws Exception {
+        Path path = Files.write(directory.resolve("file"), new byte[10]);
+        FileAttributes attributes = cache(1L, TimeUnit.HOURS).read(path);
+        assertTrue(attributes.isValid());
+        assertTrue(attributes.exists());
+        assertFalse(attributes.notExists());
+        assertTrue(attributes.canRead());
+        assertEquals(10L, attributes.size());
+        assertEquals(Files.getLastModifiedTime(path), attributes.lastModified());
+    }
+
+    @Test
+    void readsMissingFiles() {
+        FileAttributes attributes = cache(1L, TimeUnit.HOURS).read(directory.resolve("missing"));
+        assertFalse(attributes.exists());
+        assertTrue(attributes.notExists());
+        assertFalse(attributes.canRead());
+        assertFalse(attributes.canWrite());
+        assertThrows(UncheckedIOException.class, attributes::size);
+    }
+
+    @Test
+    void expiresAfterItsTimeToLive() throws Exception {
+        Path path = Files.write(directory.resolve("file"), new byte[1]);
+        assertFalse(cache(0L, TimeUnit.MILLISECONDS).read(path).isValid());
+        FileAttributes attributes = cache(20L, TimeUnit.MILLISECONDS).read(path);
+        Thread.sleep(50L);
+        assertFalse(attributes.isValid());
+    }
+
+    @Test
+    void invalidatesWhenTheDirectoryChanges() throws Exception {
+        Path path = Files.write(directory.resolve("file"), new byte[1]);
+        FileAttributes attributes = cache(1L, TimeUnit.HOURS).read(path);
+        Files.write(directory.resolve("other"), new byte[1]);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        // Polling watch services only notice changes periodically
+        while (attributes.isValid() && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertFalse(attributes.isValid());
+    }
+
+    @Test
+    void reflectsWritesThroughTheFileSystem() throws Exception {
+        JavaFileSystemImpl fs = new JavaFileSystemImpl(logger.logger(), new ArrayStreamsImpl(logger.logger()),
+                FileSystemThreads.ExecutionMode.PLATFORM, 1);
+        Path path = directory.resolve("written");
+        assertFalse(fs.getFile(path).exists());
+        OutputStream output = fs.getFile(path).newOutputStream();
+        output.accept(fs.getArrayStreams().createByteBuffer(new byte[5]));
+        output.close();
+        assertTrue(fs.getFile(path).exists());
+        assertEquals(5L, fs.getFile(path).getSize());
+    }
+
+    private AttributeCache cache(long ttl, TimeUnit unit) {
+        return new AttributeCache(logger.logger(), Thread::new, ttl, unit, 16);
+    }
+}
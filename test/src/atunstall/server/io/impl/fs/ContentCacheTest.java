@@ -0,0 +1,138 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.io.RecordingLogger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentCacheTest {
+    private final AttributeCache attributes = new AttributeCache(new RecordingLogger().logger(), Thread::new, 1L, TimeUnit.HOURS, 16);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void isDisabledWithoutABudget() {
+        assertFalse(new ContentCache(0L, 1024L).isEnabled());
+        assertTrue(new ContentCache(1024L, 1024L).isEnabled());
+    }
+
+    @Test
+    void cachesFilesReadMoreThanOnce() throws Exception {
+        ContentCache cache = new ContentCache(1 << 20, 1024L);
+        Path path = Files.write(directory.resolve("hot"), new byte[] {1, 2, 3});
+        FileAttributes snapshot = attributes.read(path);
+        assertNull(cache.get(path, snapshot));
+        ByteBuffer content = cache.get(path, snapshot);
+        assertNotNull(content);
+        assertTrue(content.isReadOnly());
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3}), content);
+        // Served from memory while the attributes are unchanged, even if the file was changed behind their back
+        Files.write(path, new byte[] {4, 5, 6});
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3}), cache.get(path, snapshot));
+    }
+
+    @Test
+    void rereadsModifiedFiles() throws Exception {
+        ContentCache cache = new ContentCache(1 << 20, 1024L);
+        Path path = Files.write(directory.resolve("hot"), new byte[] {1, 2, 3});
+        cache.get(path, attributes.read(path));
+        cache.get(path, attributes.read(path));
+        Files.write(path, new byte[] {4, 5, 6});
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 1000L));
+        assertEquals(ByteBuffer.wrap(new byte[] {4, 5, 6}), cache.get(path, attributes.read(path)));
+        Files.delete(path);
+        assertNull(cache.get(path, attributes.read(path)));
+    }
+
+    @Test
+    void skipsLargeFiles() throws Exception {
+        ContentCache cache = new ContentCache(1 << 20, 4L);
+        Path path = Files.write(directory.resolve("large"), new byte[5]);
+        for (int i = 0; i < 4; i++) {
+            assertNull(cache.get(path, attributes.read(path)));
+        }
+    }
+
+    @Test
+    void keepsFrequentlyReadFilesWithinTheBudget() throws Exception {
+        ContentCache cache = new ContentCache(8L, 8L);
+        Path hot = Files.write(directory.resolve("hot"), new byte[] {1, 2, 3, 4, 5, 6});
+        Path cold = Files.write(directory.resolve("cold"), new byte[] {7, 8, 9, 10, 11, 12});
+        FileAttributes hotSnapshot = attributes.read(hot);
+        for (int i = 0; i < 4; i++) {
+            cache.get(hot, hotSnapshot);
+        }
+        assertNull(cache.get(cold, attributes.read(cold)));
+        // The colder file is not read, since admitting it would evict the hot file
+        assertNull(cache.get(cold, attributes.read(cold)));
+        Files.write(hot, new byte[6]);
+        assertEquals(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6}), cache.get(hot, hotSnapshot));
+    }
+
+    @Test
+    void servesConcurrentReadersOfDifferentFiles() throws Exception {
+        ContentCache cache = new ContentCache(1 << 20, 1024L);
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            paths.add(Files.write(directory.resolve("file" + i), new byte[] {(byte) i, 1, 2}));
+        }
+        List<FileAttributes> snapshots = new ArrayList<>();
+        for (Path path : paths) {
+            snapshots.add(attributes.read(path));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                readers.add(executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        for (int i = 0; i < paths.size(); i++) {
+                            ByteBuffer content = cache.get(paths.get(i), snapshots.get(i));
+                            if (content != null) {
+                                assertEquals(ByteBuffer.wrap(new byte[] {(byte) i, 1, 2}), content);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> reader : readers) {
+                reader.get(10L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < paths.size(); i++) {
+            assertEquals(ByteBuffer.wrap(new byte[] {(byte) i, 1, 2}), cache.get(paths.get(i), snapshots.get(i)));
+        }
+    }
+
+    @Test
+    void forgetsInvalidatedFiles() throws Exception {
+        ContentCache cache = new ContentCache(1 << 20, 1024L);
+        Path path = Files.write(directory.resolve("hot"), new byte[] {1, 2, 3});
+        FileAttributes snapshot = attributes.read(path);
+        cache.get(path, snapshot);
+        cache.get(path, snapshot);
+        Files.write(path, new byte[] {4, 5, 6});
+        cache.invalidate(path);
+        assertEquals(ByteBuffer.wrap(new byte[] {4, 5, 6}), cache.get(path, snapshot));
+    }
+}
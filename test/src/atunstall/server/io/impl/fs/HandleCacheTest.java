@@ -0,0 +1,86 @@
+package atunstall.server.io.impl.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HandleCacheTest {
+    private final AtomicInteger created = new AtomicInteger();
+    private final HandleCache<String, Object> cache = new HandleCache<>(key -> {
+        created.incrementAndGet();
+        return new Object();
+    }, 4);
+
+    @Test
+    void sharesLiveHandles() {
+        Object handle = cache.get("a");
+        assertSame(handle, cache.get("a"));
+        assertNotSame(handle, cache.get("b"));
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    void keepsLiveHandlesBeyondItsCapacity() {
+        List<Object> handles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            handles.add(cache.get("key" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertSame(handles.get(i), cache.get("key" + i), "key" + i);
+        }
+        assertEquals(100, created.get());
+    }
+
+    @Test
+    void replacesCollectedHandles() throws InterruptedException {
+        cache.get("a");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        // The first handle is unreachable, so it is eventually collected and a lookup creates another one
+        while (created.get() == 1 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10L);
+            cache.get("a");
+        }
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    void sharesHandlesBetweenThreads() throws InterruptedException {
+        Object[] handles = new Object[8];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < handles.length; i++) {
+            int index = i;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handles[index] = cache.get("shared");
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Object handle : handles) {
+            assertSame(handles[0], handle);
+        }
+    }
+
+    @Test
+    void rejectsNonPositiveCapacities() {
+        assertThrows(IllegalArgumentException.class, () -> new HandleCache<>(key -> key, 0));
+    }
+}
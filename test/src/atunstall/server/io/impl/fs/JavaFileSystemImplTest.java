@@ -0,0 +1,78 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.impl.util.ArrayStreamsImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JavaFileSystemImplTest {
+    private final RecordingLogger logger = new RecordingLogger();
+
+    @Test
+    void platformModeBoundsItsThreads() throws InterruptedException {
+        ExecutorService executor = executor(FileSystemThreads.ExecutionMode.PLATFORM, 2);
+        Set<String> names = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(() -> {
+                Thread thread = Thread.currentThread();
+                names.add(thread.isDaemon() ? thread.getName() : "non-daemon " + thread.getName());
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10L, TimeUnit.SECONDS));
+        assertTrue(names.size() <= 2, names.toString());
+        assertTrue(names.stream().allMatch(n -> n.startsWith("IO-JavaFS-")), names.toString());
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void virtualModeFallsBackWithoutVirtualThreads() throws InterruptedException {
+        ExecutorService executor = executor(FileSystemThreads.ExecutionMode.VIRTUAL, 1);
+        assertEquals("IO-JavaFS-0", run(executor).getName());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualModeRunsTasksOnVirtualThreads() throws Exception {
+        ExecutorService executor = executor(FileSystemThreads.ExecutionMode.VIRTUAL, 1);
+        Thread thread = run(executor);
+        assertEquals(true, Thread.class.getMethod("isVirtual").invoke(thread));
+        assertTrue(thread.getName().startsWith("IO-JavaFS-virtual-"), thread.getName());
+    }
+
+    @Test
+    void sharesHandlesOfEquivalentPaths() {
+        JavaFileSystemImpl fs = new JavaFileSystemImpl(logger.logger(), new ArrayStreamsImpl(logger.logger()), FileSystemThreads.ExecutionMode.PLATFORM, 1);
+        assertSame(fs.getFile(Path.of("a/b")), fs.getFile(Path.of("a/./b")));
+        assertSame(fs.getFile(Path.of("a/b")), fs.getFile(Path.of("a/../a/b")));
+        assertSame(fs.getFile(Path.of("a/b")), fs.getFile(Path.of("a/b").toAbsolutePath()));
+    }
+
+    private ExecutorService executor(FileSystemThreads.ExecutionMode mode, int threads) {
+        return new JavaFileSystemImpl(logger.logger(), new ArrayStreamsImpl(logger.logger()), mode, threads).getExecutor();
+    }
+
+    private static Thread run(ExecutorService executor) throws InterruptedException {
+        Thread[] thread = new Thread[1];
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            thread[0] = Thread.currentThread();
+            done.countDown();
+        });
+        assertTrue(done.await(10L, TimeUnit.SECONDS));
+        return thread[0];
+    }
+}
@@ -0,0 +1,384 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.BufferConsumer;
+import atunstall.server.io.api.InputStream;
+import atunstall.server.io.api.OutputStream;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.fs.Durability;
+import atunstall.server.io.api.fs.File;
+import atunstall.server.io.impl.util.ArrayStreamsImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JavaFileTest {
+    private final RecordingLogger logger = new RecordingLogger();
+    private final JavaFileSystemImpl fs = new JavaFileSystemImpl(logger.logger(), new ArrayStreamsImpl(logger.logger()),
+            FileSystemThreads.ExecutionMode.PLATFORM, 4);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void drainsConsumersQueuedAfterClosingOnce() throws Exception {
+        int records = 24000;
+        Path path = write(ints(records));
+        InputStream stream = fs.getFile(path).newInputStream();
+        awaitClosed(stream);
+        // Each consumer takes 100 records, so overlapping drains would hand out records twice or out of bounds
+        Map<Integer, Integer> firsts = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(records / 100);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < records / 400; j++) {
+                    stream.queue(buffer -> {
+                        if (buffer.count() < 400L) {
+                            return 400L;
+                        }
+                        byte[] bytes = new byte[400];
+                        buffer.get(0L, bytes, 0, bytes.length);
+                        buffer.consume(0L, 400L);
+                        firsts.merge(ByteBuffer.wrap(bytes).getInt(), 1, Integer::sum);
+                        done.countDown();
+                        return BufferConsumer.DONE;
+                    });
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        assertTrue(done.await(10L, TimeUnit.SECONDS));
+        assertEquals(records / 100, firsts.size());
+        for (int i = 0; i < records; i += 100) {
+            assertEquals(1, firsts.get(i), "record " + i);
+        }
+        assertTrue(logger.errors().isEmpty(), logger.errors().toString());
+    }
+
+    @Test
+    void dropsConsumersThatStopTakingBytesOnceClosed() throws Exception {
+        byte[] data = ints(1000);
+        InputStream stream = fs.getFile(write(data)).newInputStream();
+        awaitClosed(stream);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch ended = new CountDownLatch(2);
+        stream.queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                calls.incrementAndGet();
+                return CONSUMED;
+            }
+
+            @Override
+            public void end() {
+                ended.countDown();
+            }
+        });
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        stream.queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                read.write(bytes(buffer), 0, (int) buffer.count());
+                buffer.consumeAll();
+                return CONSUMED;
+            }
+
+            @Override
+            public void end() {
+                ended.countDown();
+            }
+        });
+        assertTrue(ended.await(10L, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertArrayEquals(data, read.toByteArray());
+    }
+
+    @Test
+    void consumesFromTheEndWhileReadingAhead() throws Exception {
+        int records = 1 << 20;
+        InputStream stream = fs.getFile(write(ints(records))).newInputStream();
+        // Consuming from the end moves where the next read must land, so reads in flight must not target the buffer
+        int[] seen = new int[records];
+        CountDownLatch done = new CountDownLatch(records);
+        stream.queue(buffer -> {
+            long end = buffer.count() & ~3L;
+            if (end == 0L) {
+                return BufferConsumer.needMore(buffer);
+            }
+            byte[] bytes = new byte[4];
+            buffer.get(end - 4L, bytes, 0, bytes.length);
+            buffer.consume(end - 4L, 4L);
+            int record = ByteBuffer.wrap(bytes).getInt();
+            if (record >= 0 && record < records) {
+                seen[record]++;
+            }
+            done.countDown();
+            return BufferConsumer.CONSUMED;
+        });
+        assertTrue(done.await(30L, TimeUnit.SECONDS));
+        for (int i = 0; i < records; i++) {
+            assertEquals(1, seen[i], "record " + i);
+        }
+        assertTrue(logger.errors().isEmpty(), logger.errors().toString());
+    }
+
+    @Test
+    void readsLargeRangesInGrowingChunks() throws Exception {
+        byte[] data = ints(1 << 20);
+        InputStream stream = fs.getFile(write(data)).newInputStream(12345L, 3000000L);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        stream.queue(buffer -> {
+            byte[] bytes = new byte[(int) buffer.count()];
+            buffer.get(0L, bytes, 0, bytes.length);
+            buffer.consumeAll();
+            read.write(bytes, 0, bytes.length);
+            return BufferConsumer.CONSUMED;
+        });
+        awaitClosed(stream);
+        assertArrayEquals(Arrays.copyOfRange(data, 12345, 3012345), read.toByteArray());
+    }
+
+    @Test
+    void readsSeveralRangesAtOnce() throws Exception {
+        byte[] data = ints(1000);
+        Path path = write(data);
+        List<atunstall.server.io.api.ByteBuffer> buffers = fs.getFile(path)
+                .read(new long[] {3996L, 0L, 400L}, new int[] {100, 8, 4})
+                .toCompletableFuture().get(10L, TimeUnit.SECONDS);
+        assertEquals(3, buffers.size());
+        assertArrayEquals(Arrays.copyOfRange(data, 3996, 4000), bytes(buffers.get(0)));
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 8), bytes(buffers.get(1)));
+        assertArrayEquals(Arrays.copyOfRange(data, 400, 404), bytes(buffers.get(2)));
+        assertArrayEquals(Arrays.copyOfRange(data, 40, 48), bytes(fs.getFile(path).read(40L, 8)
+                .toCompletableFuture().get(10L, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void rejectsInvalidRanges() throws Exception {
+        File<? extends Path> file = fs.getFile(write(ints(1)));
+        assertThrows(IllegalArgumentException.class, () -> file.read(new long[] {0L}, new int[0]));
+        assertThrows(IllegalArgumentException.class, () -> file.read(-1L, 1));
+        assertThrows(IllegalArgumentException.class, () -> file.newInputStream(0L, -1L));
+        assertTrue(fs.getFile(directory.resolve("missing")).read(0L, 1).toCompletableFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    void readsNothingPastTheEnd() throws Exception {
+        InputStream stream = fs.getFile(write(ints(10))).newInputStream(100L, 10L);
+        List<Long> counts = new ArrayList<>();
+        CountDownLatch ended = new CountDownLatch(1);
+        stream.queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                counts.add(buffer.count());
+                return BufferConsumer.needMore(buffer);
+            }
+
+            @Override
+            public void end() {
+                ended.countDown();
+            }
+        });
+        assertTrue(ended.await(10L, TimeUnit.SECONDS));
+        assertEquals(List.of(), counts);
+    }
+
+    @Test
+    void coalescesSmallWritesUntilClosed() throws Exception {
+        Path path = directory.resolve("log");
+        OutputStream output = fs.getFile(path).newOutputStream();
+        ArrayStreamsImpl streams = new ArrayStreamsImpl(logger.logger());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            byte[] line = ("line " + i + "\n").getBytes(StandardCharsets.US_ASCII);
+            output.accept(streams.createByteBuffer(line));
+            expected.write(line, 0, line.length);
+        }
+        output.close();
+        assertArrayEquals(expected.toByteArray(), Files.readAllBytes(path));
+        assertThrows(IllegalStateException.class, () -> output.accept(streams.createByteBuffer(new byte[1])));
+    }
+
+    @Test
+    void writesCoalescedBytesAfterADelay() throws Exception {
+        Path path = directory.resolve("delayed");
+        OutputStream output = fs.getFile(path).newOutputStream(Durability.BATCH);
+        output.accept(new ArrayStreamsImpl(logger.logger()).createByteBuffer(new byte[] {1, 2, 3}));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (Files.size(path) < 3L && System.nanoTime() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertEquals(3L, Files.size(path));
+        output.close();
+    }
+
+    @Test
+    void writesLargeBuffersWithThePendingBytes() throws Exception {
+        Path path = directory.resolve("large");
+        ArrayStreamsImpl streams = new ArrayStreamsImpl(logger.logger());
+        byte[] small = {42};
+        byte[] large = ints(10000);
+        OutputStream output = fs.getFile(path).newOutputStream(Durability.CLOSE);
+        output.accept(streams.createByteBuffer(small));
+        output.accept(streams.createByteBuffer(large));
+        assertEquals(1L + large.length, Files.size(path));
+        output.close();
+        byte[] written = Files.readAllBytes(path);
+        assertEquals(42, written[0]);
+        assertArrayEquals(large, Arrays.copyOfRange(written, 1, written.length));
+    }
+
+    @Test
+    void transfersFileRanges() throws Exception {
+        byte[] data = ints(1000);
+        Path source = write(data);
+        Path path = directory.resolve("copy");
+        OutputStream output = fs.getFile(path).newOutputStream();
+        output.accept(new ArrayStreamsImpl(logger.logger()).createByteBuffer(new byte[] {7}));
+        output.accept(fs.getFile(source), 100L, 200L);
+        output.close();
+        byte[] written = Files.readAllBytes(path);
+        assertEquals(201, written.length);
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 300), Arrays.copyOfRange(written, 1, written.length));
+    }
+
+    @Test
+    void transfersToFileChannelsUntilTheEnd() throws Exception {
+        byte[] data = ints(100000);
+        Path path = directory.resolve("sent");
+        try (FileChannel target = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertEquals(data.length - 1000L, fs.getFile(write(data)).transferTo(target, 1000L, data.length));
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, data.length), Files.readAllBytes(path));
+    }
+
+    @Test
+    void transfersToOtherChannelsThroughABuffer() throws Exception {
+        byte[] data = ints(100000);
+        Path source = write(data);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        assertEquals(200000L, fs.getFile(source).transferTo(Channels.newChannel(target), 4L, 200000L));
+        assertArrayEquals(Arrays.copyOfRange(data, 4, 200004), target.toByteArray());
+        // A channel that accepts no more bytes ends the transfer early
+        WritableByteChannel full = new WritableByteChannel() {
+            private int room = 10;
+
+            @Override
+            public int write(ByteBuffer src) {
+                int count = Math.min(room, src.remaining());
+                src.position(src.position() + count);
+                room -= count;
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+                // Nothing to close
+            }
+        };
+        assertEquals(10L, fs.getFile(source).transferTo(full, 0L, 100L));
+        assertThrows(IllegalArgumentException.class, () -> fs.getFile(source).transferTo(full, -1L, 1L));
+    }
+
+    @Test
+    void mapsFilesWithoutCopying() throws Exception {
+        byte[] data = "GET / HTTP/1.1\r\nHost: example\r\n\r\nbody".getBytes(StandardCharsets.US_ASCII);
+        ParsableByteBuffer mapped = fs.getFile(write(data)).map();
+        assertEquals(data.length, mapped.count());
+        assertEquals(29L, mapped.indexOf(0L, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(mapped.compare(16L, "Host".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("example", mapped.partition(22L, 7L).toString(0L, 7L, StandardCharsets.US_ASCII));
+        assertEquals("body", fs.getFile(write(data)).map(33L, 4L).toString(0L, 4L, StandardCharsets.US_ASCII));
+        assertThrows(IllegalArgumentException.class, () -> fs.getFile(write(data)).map(34L, 4L));
+    }
+
+    @Test
+    void consumesFromTheMiddleOfMappedFiles() throws Exception {
+        byte[] data = "key: value\r\n".getBytes(StandardCharsets.US_ASCII);
+        Path path = write(data);
+        ParsableByteBuffer mapped = fs.getFile(path).map();
+        mapped.consume(0L, 1L);
+        mapped.consume(2L, 2L);
+        assertEquals("eyvalue\r\n", mapped.toString(0L, mapped.count(), StandardCharsets.US_ASCII));
+        mapped.consume(mapped.count() - 2L, 2L);
+        mapped.clear(0L, 2L);
+        assertEquals("\0\0value", mapped.toString(0L, mapped.count(), StandardCharsets.US_ASCII));
+        assertArrayEquals(data, Files.readAllBytes(path));
+    }
+
+    @Test
+    void clampsTransferredRegionsToTheFile() throws Exception {
+        Path source = write(ints(10));
+        List<Long> counts = new ArrayList<>();
+        OutputStream output = new OutputStream() {
+            @Override
+            public void accept(atunstall.server.io.api.ByteBuffer buffer) {
+                counts.add(buffer.count());
+            }
+
+            @Override
+            public void close() {
+                // Nothing to close
+            }
+        };
+        output.accept(fs.getFile(source), 100L, 0L);
+        output.accept(fs.getFile(source), 100L, 10L);
+        output.accept(fs.getFile(source), 36L, 10L);
+        assertEquals(List.of(0L, 0L, 4L), counts);
+    }
+
+    Path write(byte[] bytes) throws IOException {
+        return Files.write(directory.resolve("file-" + System.nanoTime()), bytes);
+    }
+
+    static byte[] ints(int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(count * 4);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(i);
+        }
+        return buffer.array();
+    }
+
+    static byte[] bytes(atunstall.server.io.api.ByteBuffer buffer) {
+        byte[] bytes = new byte[(int) buffer.count()];
+        buffer.get(0L, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    static void awaitClosed(InputStream stream) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (!stream.isClosed() && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertTrue(stream.isClosed());
+    }
+}
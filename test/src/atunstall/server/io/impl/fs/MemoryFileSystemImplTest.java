@@ -0,0 +1,158 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.BufferConsumer;
+import atunstall.server.io.api.InputStream;
+import atunstall.server.io.api.OutputStream;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.fs.File;
+import atunstall.server.io.impl.util.ArrayStreamsImpl;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryFileSystemImplTest {
+    private final RecordingLogger logger = new RecordingLogger();
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(logger.logger());
+    private final MemoryFileSystemImpl fs = new MemoryFileSystemImpl(logger.logger(), streams, FileSystemThreads.ExecutionMode.PLATFORM, 2, 16);
+
+    @Test
+    void runsStreamsOnItsOwnBoundedThreads() throws Exception {
+        write("/file", JavaFileTest.ints(1000));
+        List<String> names = new ArrayList<>();
+        CountDownLatch ended = new CountDownLatch(1);
+        fs.getFile("/file").newInputStream().queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                names.add(Thread.currentThread().getName());
+                buffer.consumeAll();
+                return CONSUMED;
+            }
+
+            @Override
+            public void end() {
+                ended.countDown();
+            }
+        });
+        assertTrue(ended.await(10L, TimeUnit.SECONDS));
+        assertTrue(names.stream().allMatch(n -> n.equals("IO-MemoryFS-0") || n.equals("IO-MemoryFS-1")), names.toString());
+    }
+
+    @Test
+    void sharesHandlesOfEquivalentPaths() {
+        assertSame(fs.getFile("/a/b"), fs.getFile("a//./b"));
+        assertSame(fs.getFile("/a/b"), fs.getFile("/c/../a/b/"));
+    }
+
+    @Test
+    void createsAndDeletesFiles() throws Exception {
+        File<? extends String> file = fs.getFile("/dir/file.txt");
+        assertFalse(file.exists());
+        assertTrue(file.notExists());
+        assertThrows(UncheckedIOException.class, file::getSize);
+        write("/dir/file.txt", "text".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(file.exists());
+        assertEquals(4L, file.getSize());
+        assertEquals(Optional.of("text/plain"), file.getMimeType());
+        assertTrue(fs.delete("dir/file.txt"));
+        assertFalse(fs.delete("dir/file.txt"));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void streamsFilesInChunks() throws Exception {
+        byte[] data = JavaFileTest.ints(1000);
+        write("/file", data);
+        assertArrayEquals(data, read(fs.getFile("/file").newInputStream()));
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 3010), read(fs.getFile("/file").newInputStream(10L, 3000L)));
+        assertArrayEquals(new byte[0], read(fs.getFile("/file").newInputStream(5000L, 10L)));
+        assertTrue(logger.errors().isEmpty(), logger.errors().toString());
+    }
+
+    @Test
+    void readsMapsAndTransfersRanges() throws Exception {
+        byte[] data = JavaFileTest.ints(100);
+        write("/file", data);
+        File<? extends String> file = fs.getFile("/file");
+        List<atunstall.server.io.api.ByteBuffer> buffers = file.read(new long[] {390L, 8L}, new int[] {100, 20})
+                .toCompletableFuture().get(10L, TimeUnit.SECONDS);
+        assertArrayEquals(Arrays.copyOfRange(data, 390, 400), JavaFileTest.bytes(buffers.get(0)));
+        assertArrayEquals(Arrays.copyOfRange(data, 8, 28), JavaFileTest.bytes(buffers.get(1)));
+        assertArrayEquals(Arrays.copyOfRange(data, 5, 305), JavaFileTest.bytes(file.map(5L, 300L)));
+        assertThrows(IllegalArgumentException.class, () -> file.map(300L, 101L));
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        assertEquals(50L, file.transferTo(Channels.newChannel(target), 350L, 100L));
+        assertArrayEquals(Arrays.copyOfRange(data, 350, 400), target.toByteArray());
+        assertTrue(fs.getFile("/missing").read(0L, 1).toCompletableFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    void keepsWritesOfConcurrentStreamsWhole() throws Exception {
+        OutputStream output = fs.getFile("/log").newOutputStream();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            byte fill = (byte) i;
+            threads.add(new Thread(() -> {
+                byte[] record = new byte[40];
+                Arrays.fill(record, fill);
+                for (int j = 0; j < 100; j++) {
+                    output.accept(streams.createByteBuffer(record));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        output.close();
+        byte[] written = read(fs.getFile("/log").newInputStream());
+        assertEquals(16000, written.length);
+        for (int i = 0; i < written.length; i += 40) {
+            for (int j = 1; j < 40; j++) {
+                assertEquals(written[i], written[i + j], "record at " + i);
+            }
+        }
+    }
+
+    private void write(String path, byte[] data) throws Exception {
+        OutputStream output = fs.getFile(path).newOutputStream();
+        output.accept(streams.createByteBuffer(data));
+        output.close();
+    }
+
+    private static byte[] read(InputStream stream) throws InterruptedException {
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        CountDownLatch ended = new CountDownLatch(1);
+        stream.queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                read.write(JavaFileTest.bytes(buffer), 0, (int) buffer.count());
+                buffer.consumeAll();
+                return CONSUMED;
+            }
+
+            @Override
+            public void end() {
+                ended.countDown();
+            }
+        });
+        assertTrue(ended.await(10L, TimeUnit.SECONDS));
+        return read.toByteArray();
+    }
+}
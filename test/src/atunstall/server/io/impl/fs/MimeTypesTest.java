@@ -0,0 +1,66 @@
+package atunstall.server.io.impl.fs;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.impl.util.ArrayStreamsImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MimeTypesTest {
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resolvesKnownExtensions() {
+        assertEquals("text/html", MimeTypes.fromExtension("index.html"));
+        assertEquals("image/jpeg", MimeTypes.fromExtension(Path.of("photos", "CAT.JPG")));
+        assertEquals("application/gzip", MimeTypes.fromExtension("archive.tar.gz"));
+        assertNull(MimeTypes.fromExtension("README"));
+        assertNull(MimeTypes.fromExtension("file.unknown"));
+        assertNull(MimeTypes.fromExtension(Path.of("/")));
+    }
+
+    @Test
+    void sniffsSignatures() {
+        assertEquals("image/png", MimeTypes.sniff(PNG, PNG.length));
+        assertEquals("image/webp", sniff("RIFF\0\0\0\0WEBPVP8 "));
+        assertEquals("video/mp4", sniff("\0\0\0\u0018ftypmp42"));
+        assertEquals("image/avif", sniff("\0\0\0\u001cftypavif"));
+        assertEquals("application/pdf", sniff("%PDF-1.7"));
+        assertNull(sniff("plain text"));
+    }
+
+    @Test
+    void ignoresBytesPastTheLength() {
+        assertNull(MimeTypes.sniff(PNG, 4));
+        assertNull(MimeTypes.sniff(new byte[MimeTypes.SNIFF_LENGTH], 0));
+    }
+
+    @Test
+    void resolvesFileTypesFromExtensionsThenContent() throws Exception {
+        RecordingLogger logger = new RecordingLogger();
+        JavaFileSystemImpl fs = new JavaFileSystemImpl(logger.logger(), new ArrayStreamsImpl(logger.logger()),
+                FileSystemThreads.ExecutionMode.PLATFORM, 1);
+        Path named = Files.write(directory.resolve("image.png"), "not a png".getBytes(StandardCharsets.US_ASCII));
+        Path unnamed = Files.write(directory.resolve("image"), PNG);
+        Path unknown = Files.write(directory.resolve("data"), new byte[] {1, 2, 3});
+        assertEquals(Optional.of("image/png"), fs.getFile(named).getMimeType());
+        assertEquals(Optional.of("image/png"), fs.getFile(unnamed).getMimeType());
+        assertEquals(Optional.empty(), fs.getFile(unknown).getMimeType());
+        assertEquals(Optional.empty(), fs.getFile(directory.resolve("missing")).getMimeType());
+    }
+
+    private static String sniff(String head) {
+        byte[] bytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        return MimeTypes.sniff(bytes, bytes.length);
+    }
+}
@@ -0,0 +1,86 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArrayAppendableParsableByteBufferTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void rollbackUndoesConsumptionsInReverse() {
+        AppendableParsableByteBuffer buffer = buffer("abcdefghijklmnop");
+        buffer.consume(0L, 2L);
+        buffer.consume(1L, 2L);
+        buffer.consume(9L, 3L);
+        buffer.consumeAll();
+        buffer.rollback();
+        assertEquals("abcdefghijklmnop", string(buffer));
+        assertEquals(0L, buffer.bytesConsumed());
+    }
+
+    @Test
+    void rollbackStopsAtTheLastCheckpoint() {
+        AppendableParsableByteBuffer buffer = buffer("abcdefgh");
+        buffer.consume(2L, 2L);
+        buffer.updateBackup();
+        buffer.consume(0L, 1L);
+        buffer.consume(3L, 1L);
+        buffer.rollback();
+        assertEquals("abefgh", string(buffer));
+    }
+
+    @Test
+    void appendingCheckpoints() {
+        AppendableParsableByteBuffer buffer = buffer("abcd");
+        buffer.consume(0L, 2L);
+        append(buffer, "ef");
+        buffer.rollback();
+        assertEquals("cdef", string(buffer));
+    }
+
+    @Test
+    void rollbackSurvivesCompaction() {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(16);
+        append(buffer, "0123456789abcdef");
+        buffer.consume(0L, 12L);
+        buffer.updateBackup();
+        buffer.consume(1L, 2L);
+        buffer.rollback();
+        append(buffer, "ghijklmnop");
+        assertEquals("cdefghijklmnop", string(buffer));
+    }
+
+    @Test
+    void rollbackRestoresPartitionsShiftedByMiddleConsumptions() {
+        AppendableParsableByteBuffer buffer = buffer("header:value;trailer");
+        ParsableByteBuffer value = buffer.partition(7L, 5L);
+        ParsableByteBuffer trailer = buffer.partition(13L, 7L);
+        buffer.consume(2L, 8L);
+        buffer.consume(8L, 4L);
+        assertEquals("ue", string(value));
+        buffer.rollback();
+        assertEquals("value", string(value));
+        assertEquals("trailer", string(trailer));
+    }
+
+    private AppendableParsableByteBuffer buffer(String content) {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(content.length());
+        append(buffer, content);
+        return buffer;
+    }
+
+    private static void append(AppendableParsableByteBuffer buffer, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.US_ASCII);
+        buffer.append(bytes, 0, bytes.length);
+    }
+
+    private static String string(ParsableByteBuffer buffer) {
+        return buffer.toString(0L, buffer.count(), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,103 @@
+package atunstall.server.io.impl.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BufferPoolTest {
+    private final BufferPool<byte[]> pool = new BufferPool<>(byte[]::new, b -> b.length, b -> {});
+
+    @Test
+    void roundsUpToSizeClass() {
+        assertEquals(256, pool.acquire(1).length);
+        assertEquals(1024, pool.acquire(1000).length);
+        assertEquals(1024, pool.acquire(1024).length);
+    }
+
+    @Test
+    void reusesReleasedBuffers() {
+        byte[] buffer = pool.acquire(4096);
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire(4000));
+        assertEquals(1L, pool.hits());
+        assertEquals(1L, pool.recycled());
+    }
+
+    @Test
+    void discardsBuffersOutsideSizeClasses() {
+        pool.release(new byte[1000]);
+        pool.release(new byte[(1 << BufferPool.MAX_SHIFT) * 2]);
+        assertEquals(2L, pool.discarded());
+        assertEquals((1 << BufferPool.MAX_SHIFT) + 1, pool.acquire((1 << BufferPool.MAX_SHIFT) + 1).length);
+    }
+
+    @Test
+    void sharesBuffersBetweenThreads() throws InterruptedException {
+        byte[][] buffers = new byte[16][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire(512);
+        }
+        // Overflows the releasing thread's cache into the shared cache
+        Thread thread = new Thread(() -> {
+            for (byte[] buffer : buffers) {
+                pool.release(buffer);
+            }
+        });
+        thread.start();
+        thread.join();
+        pool.acquire(512);
+        assertEquals(1L, pool.hits());
+    }
+
+    @Test
+    void capsThreadCachesInBytes() throws InterruptedException {
+        byte[][] buffers = new byte[8][];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire(1 << 18);
+        }
+        // Four of these fill the releasing thread's budget, so the rest are shared
+        Thread thread = new Thread(() -> {
+            for (byte[] buffer : buffers) {
+                pool.release(buffer);
+            }
+        });
+        thread.start();
+        thread.join();
+        for (int i = 0; i < buffers.length; i++) {
+            pool.acquire(1 << 18);
+        }
+        assertEquals(4L, pool.hits());
+    }
+
+    @Test
+    void platformThreadsAreNotVirtual() {
+        assertFalse(BufferPool.isVirtual(Thread.currentThread()));
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreadsUseSharedCache() throws Exception {
+        AtomicReference<byte[]> released = new AtomicReference<>();
+        AtomicReference<byte[]> acquired = new AtomicReference<>();
+        join(startVirtualThread(() -> {
+            released.set(pool.acquire(2048));
+            pool.release(released.get());
+        }));
+        join(startVirtualThread(() -> acquired.set(pool.acquire(2048))));
+        assertSame(released.get(), acquired.get());
+    }
+
+    private static Thread startVirtualThread(Runnable task) throws ReflectiveOperationException {
+        return (Thread) Thread.class.getMethod("startVirtualThread", Runnable.class).invoke(null, task);
+    }
+
+    private static void join(Thread thread) throws InterruptedException {
+        thread.join();
+    }
+}
@@ -0,0 +1,107 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.ByteRangeVisitor;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteRangeVisitorTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void lendsTheBackingArray() {
+        ByteBuffer buffer = streams.createByteBuffer("0123456789".getBytes(StandardCharsets.US_ASCII));
+        Recorder first = visit(buffer.partition(2L, 6L), 1L, 4L);
+        Recorder second = visit(buffer, 0L, 10L);
+        assertEquals("3456", first.string());
+        assertEquals(1, first.arrays.size());
+        assertSame(first.arrays.get(0), second.arrays.get(0));
+    }
+
+    @Test
+    void lendsReadOnlyViewsOfDirectStorage() {
+        AppendableParsableByteBuffer buffer = streams.createDirectByteBuffer(16);
+        byte[] bytes = "direct".getBytes(StandardCharsets.US_ASCII);
+        buffer.append(bytes, 0, bytes.length);
+        Recorder recorder = visit(buffer, 1L, 4L);
+        assertEquals("irec", recorder.string());
+        assertEquals(1, recorder.views);
+        assertTrue(recorder.readOnly);
+    }
+
+    @Test
+    void visitsEachConcatenatedBufferOnce() {
+        List<ParsableByteBuffer> parts = new ArrayList<>();
+        for (String part : new String[] {"ab", "cde", "fghi"}) {
+            AppendableParsableByteBuffer buffer = streams.createByteBuffer(part.length());
+            buffer.append(part.getBytes(StandardCharsets.US_ASCII), 0, part.length());
+            parts.add(buffer);
+        }
+        Recorder recorder = visit(streams.concatenate(parts), 1L, 7L);
+        assertEquals("bcdefgh", recorder.string());
+        assertEquals(3, recorder.arrays.size());
+    }
+
+    @Test
+    void visitsEachChunkOfSegmentedBuffers() {
+        AppendableParsableByteBuffer buffer = streams.createSegmentedByteBuffer(256);
+        byte[] bytes = new byte[600];
+        buffer.append(bytes, 0, bytes.length);
+        Recorder recorder = visit(buffer, 100L, 400L);
+        assertEquals(400, recorder.bytes.size());
+        assertEquals(2, recorder.arrays.size() + recorder.views);
+    }
+
+    @Test
+    void visitsNothingForEmptyRanges() {
+        ByteBuffer buffer = streams.createByteBuffer(new byte[4]);
+        assertEquals(0, visit(buffer, 4L, 0L).bytes.size());
+    }
+
+    private static Recorder visit(ByteBuffer buffer, long index, long count) {
+        Recorder recorder = new Recorder();
+        buffer.visit(index, count, recorder);
+        return recorder;
+    }
+
+    private static class Recorder implements ByteRangeVisitor {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<byte[]> arrays = new ArrayList<>();
+        private int views;
+        private boolean readOnly = true;
+
+        @Override
+        public void visit(byte[] bytes, int offset, int count) {
+            if (count > 0) {
+                arrays.add(bytes);
+            }
+            this.bytes.write(bytes, offset, count);
+        }
+
+        @Override
+        public void visit(java.nio.ByteBuffer bytes) {
+            if (bytes.hasRemaining()) {
+                views++;
+            }
+            readOnly &= bytes.isReadOnly();
+            byte[] copy = new byte[bytes.remaining()];
+            bytes.get(copy);
+            this.bytes.write(copy, 0, copy.length);
+        }
+
+        private String string() {
+            return bytes.toString(StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ByteReader;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteReaderImplTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void readsBothByteOrders() {
+        ByteReader reader = reader(0x01, 0x02, 0x01, 0x02, 0x01, 0x02, 0x03, 0x04, 0x01, 0x02, 0x03, 0x04,
+                1, 2, 3, 4, 5, 6, 7, 8, 1, 2, 3, 4, 5, 6, 7, 8, 0xFF, 0xFF);
+        assertEquals((short) 0x0102, reader.readShort());
+        assertEquals((short) 0x0201, reader.readShortLE());
+        assertEquals(0x01020304, reader.readInt());
+        assertEquals(0x04030201, reader.readIntLE());
+        assertEquals(0x0102030405060708L, reader.readLong());
+        assertEquals(0x0807060504030201L, reader.readLongLE());
+        assertEquals(-1, reader.readByte());
+        assertEquals(0xFF, reader.readUnsignedByte());
+        assertEquals(0L, reader.remaining());
+    }
+
+    @Test
+    void readsVarInts() {
+        ByteReader reader = reader(0x00, 0x7F, 0xAC, 0x02, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F,
+                0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+        assertEquals(0, reader.readVarInt());
+        assertEquals(127, reader.readVarInt());
+        assertEquals(300, reader.readVarInt());
+        assertEquals(-1, reader.readVarInt());
+        assertEquals(-1L, reader.readVarLong());
+    }
+
+    @Test
+    void readsZigZagVarInts() {
+        ByteReader reader = reader(0x00, 0x01, 0x02, 0x03, 0xFE, 0xFF, 0xFF, 0xFF, 0x0F);
+        assertEquals(0, reader.readZigZagInt());
+        assertEquals(-1, reader.readZigZagInt());
+        assertEquals(1, reader.readZigZagInt());
+        assertEquals(-2L, reader.readZigZagLong());
+        assertEquals(Integer.MAX_VALUE, reader.readZigZagInt());
+    }
+
+    @Test
+    void rejectsOverlongVarInts() {
+        ByteReader reader = reader(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+        assertThrows(IllegalStateException.class, reader::readVarInt);
+    }
+
+    @Test
+    void rejectsReadsPastTheEnd() {
+        ByteReader reader = reader(1, 2, 3);
+        assertFalse(reader.has(4L));
+        assertThrows(IllegalStateException.class, reader::readInt);
+        assertEquals(0L, reader.position());
+        assertThrows(IllegalStateException.class, reader(0x81, 0x82)::readVarInt);
+        assertThrows(IllegalStateException.class, () -> reader.skip(4L));
+    }
+
+    @Test
+    void decodesUtf8() {
+        byte[] bytes = "h\u00E9llo \u20AC \uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        StringBuilder builder = new StringBuilder();
+        reader(bytes).readUtf8(bytes.length, builder);
+        assertEquals("h\u00E9llo \u20AC \uD83D\uDE00", builder.toString());
+        CharBuffer chars = CharBuffer.allocate(16);
+        reader(bytes).readUtf8(bytes.length, chars);
+        assertEquals("h\u00E9llo \u20AC \uD83D\uDE00", chars.flip().toString());
+    }
+
+    @Test
+    void replacesMalformedUtf8() {
+        StringBuilder builder = new StringBuilder();
+        reader('a', 0xC3, 'b', 0xFF, 0xE2, 0x82).readUtf8(6, builder);
+        assertEquals("a\uFFFDb\uFFFD\uFFFD", builder.toString());
+    }
+
+    @Test
+    void decodesLongUtf8AcrossWindows() {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            expected.append(i % 3 == 0 ? "\u00E9" : i % 3 == 1 ? "\u20AC" : "x");
+        }
+        byte[] bytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+        ByteReader reader = reader(bytes);
+        StringBuilder builder = new StringBuilder();
+        reader.readUtf8(bytes.length, builder);
+        assertEquals(expected.toString(), builder.toString());
+    }
+
+    @Test
+    void resetsToTheMarkAndCommitsConsumedBytes() {
+        AppendableParsableByteBuffer buffer = buffer(1, 2, 3, 4, 5, 6);
+        ByteReader reader = streams.createReader(buffer);
+        reader.readShort();
+        reader.mark();
+        assertEquals(3, reader.readByte());
+        reader.reset();
+        assertEquals(2L, reader.position());
+        assertEquals(3, reader.readByte());
+        reader.commit();
+        assertEquals(0L, reader.position());
+        assertEquals(3L, buffer.count());
+        assertEquals(4, reader.readByte());
+        reader.reset();
+        assertEquals(4, reader.readByte());
+    }
+
+    @Test
+    void seesBytesAppendedAfterAttaching() {
+        AppendableParsableByteBuffer buffer = buffer(0, 0);
+        ByteReader reader = streams.createReader(buffer);
+        assertEquals((short) 0, reader.readShort());
+        assertFalse(reader.has(1L));
+        buffer.append(new byte[] {0, 0, 1, 0}, 0, 4);
+        assertTrue(reader.has(4L));
+        assertEquals(256, reader.readInt());
+    }
+
+    private ByteReader reader(int... values) {
+        return streams.createReader(buffer(values));
+    }
+
+    private ByteReader reader(byte[] bytes) {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(bytes.length);
+        buffer.append(bytes, 0, bytes.length);
+        return streams.createReader(buffer);
+    }
+
+    private AppendableParsableByteBuffer buffer(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(bytes.length);
+        buffer.append(bytes, 0, bytes.length);
+        return buffer;
+    }
+}
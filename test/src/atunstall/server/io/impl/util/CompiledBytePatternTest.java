@@ -0,0 +1,131 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.BytePattern;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompiledBytePatternTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+    private final Random random = new Random(42L);
+
+    @Test
+    void matchesNaiveSearchInArrays() {
+        for (int round = 0; round < 500; round++) {
+            byte[] bytes = randomBytes(1 + random.nextInt(200));
+            byte[] sequence = randomBytes(1 + random.nextInt(12));
+            int from = random.nextInt(bytes.length);
+            for (BytePattern pattern : patterns(sequence)) {
+                assertEquals(naive(bytes, sequence, from, bytes.length), pattern.indexIn(bytes, from, bytes.length));
+            }
+        }
+    }
+
+    @Test
+    void matchesNaiveSearchInNioBuffers() {
+        for (int round = 0; round < 500; round++) {
+            byte[] bytes = randomBytes(1 + random.nextInt(200));
+            byte[] sequence = randomBytes(1 + random.nextInt(12));
+            java.nio.ByteBuffer heap = java.nio.ByteBuffer.wrap(bytes);
+            java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+            int expected = naive(bytes, sequence, 0, bytes.length);
+            for (BytePattern pattern : patterns(sequence)) {
+                assertEquals(expected, pattern.indexIn(heap, 0, bytes.length));
+                assertEquals(expected, pattern.indexIn(direct, 0, bytes.length));
+            }
+        }
+    }
+
+    @Test
+    void findsOverlappingOccurrences() {
+        byte[] bytes = "aaab".getBytes(StandardCharsets.US_ASCII);
+        for (BytePattern pattern : patterns("aab".getBytes(StandardCharsets.US_ASCII))) {
+            assertEquals(1, pattern.indexIn(bytes, 0, bytes.length));
+        }
+        bytes = "\r\n\r\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        for (BytePattern pattern : patterns("\r\n\r\n".getBytes(StandardCharsets.US_ASCII))) {
+            assertEquals(3, pattern.indexIn(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    void respectsTheSearchRange() {
+        byte[] bytes = "--boundary--boundary".getBytes(StandardCharsets.US_ASCII);
+        BytePattern pattern = streams.createPattern("boundary".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(12, pattern.indexIn(bytes, 3, bytes.length));
+        assertEquals(-1, pattern.indexIn(bytes, 3, 19));
+        assertEquals(0, streams.createPattern(new byte[0]).indexIn(bytes, 0, bytes.length));
+    }
+
+    @Test
+    void matchesNaiveSearchInEveryBuffer() {
+        for (int round = 0; round < 200; round++) {
+            byte[] bytes = randomBytes(1 + random.nextInt(1000));
+            byte[] sequence = randomBytes(1 + random.nextInt(12));
+            long expected = naive(bytes, sequence, 0, bytes.length);
+            BytePattern pattern = streams.createPattern(sequence);
+            for (ParsableByteBuffer buffer : buffers(bytes)) {
+                assertEquals(expected, buffer.indexOf(0L, pattern), buffer.getClass().getSimpleName());
+                assertEquals(expected, buffer.indexOf(0L, sequence), buffer.getClass().getSimpleName());
+            }
+        }
+    }
+
+    private List<BytePattern> patterns(byte[] sequence) {
+        return List.of(new CompiledBytePattern(sequence, false), new CompiledBytePattern(sequence, true));
+    }
+
+    private List<ParsableByteBuffer> buffers(byte[] bytes) {
+        List<ParsableByteBuffer> buffers = new ArrayList<>();
+        AppendableParsableByteBuffer array = streams.createByteBuffer(bytes.length);
+        array.append(bytes, 0, bytes.length);
+        buffers.add(array);
+        buffers.add(streams.createByteBuffer(java.nio.ByteBuffer.wrap(bytes)));
+        AppendableParsableByteBuffer direct = streams.createDirectByteBuffer(bytes.length);
+        direct.append(bytes, 0, bytes.length);
+        buffers.add(direct);
+        AppendableParsableByteBuffer segmented = streams.createSegmentedByteBuffer(256);
+        segmented.append(bytes, 0, bytes.length);
+        buffers.add(segmented);
+        List<ParsableByteBuffer> parts = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; ) {
+            int length = Math.min(1 + random.nextInt(16), bytes.length - offset);
+            AppendableParsableByteBuffer part = streams.createByteBuffer(length);
+            part.append(bytes, offset, length);
+            parts.add(part);
+            offset += length;
+        }
+        buffers.add(streams.concatenate(parts));
+        return buffers;
+    }
+
+    private byte[] randomBytes(int length) {
+        // A small alphabet so that partial matches are frequent
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(3));
+        }
+        return bytes;
+    }
+
+    private static int naive(byte[] bytes, byte[] sequence, int from, int to) {
+        outer:
+        for (int i = from; i <= to - sequence.length; i++) {
+            for (int j = 0; j < sequence.length; j++) {
+                if (bytes[i + j] != sequence[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,136 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcatenatedParsableByteBufferTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void readsAcrossBuffers() {
+        ParsableByteBuffer buffer = streams.concatenate(List.of(buffer("GET / "), buffer("HTTP/1.1"), buffer("\r\n")));
+        assertEquals(16L, buffer.count());
+        assertEquals("/ HTTP", buffer.toString(4L, 6L, StandardCharsets.US_ASCII));
+        assertEquals((byte) 'H', buffer.get(6L));
+        assertTrue(buffer.compare(5L, " HTTP/1.1\r".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(13L, buffer.indexOf(0L, "1\r\n".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void consumesAcrossBuffers() {
+        AppendableParsableByteBuffer first = buffer("abcd");
+        AppendableParsableByteBuffer second = buffer("efgh");
+        ParsableByteBuffer buffer = streams.concatenate(List.of(first, second));
+        buffer.consume(2L, 4L);
+        assertEquals("abgh", string(buffer));
+        assertEquals("ab", string(first));
+        assertEquals("gh", string(second));
+    }
+
+    @Test
+    void seesAppendsToTheBuffers() {
+        AppendableParsableByteBuffer first = buffer("ab");
+        AppendableParsableByteBuffer second = buffer("cd");
+        ParsableByteBuffer buffer = streams.concatenate(List.of(first, second));
+        assertEquals(4L, buffer.count());
+        first.append("XY".getBytes(StandardCharsets.US_ASCII), 0, 2);
+        assertEquals(6L, buffer.count());
+        assertEquals("abXYcd", string(buffer));
+        assertEquals((byte) 'c', buffer.get(4L));
+    }
+
+    @Test
+    void looksUpWithoutRecountingUnchangedBuffers() {
+        CountingBuffer first = new CountingBuffer("abcd");
+        CountingBuffer second = new CountingBuffer("efgh");
+        ParsableByteBuffer buffer = streams.concatenate(List.of(first, second));
+        for (long i = 0L; i < 8L; i++) {
+            buffer.get(7L - i);
+        }
+        assertEquals(1, first.counts);
+        assertEquals(1, second.counts);
+        // Changes through a partition of a child are reported too
+        first.partition(1L, 2L).consume(0L, 1L);
+        assertEquals((byte) 'e', buffer.get(3L));
+        assertEquals(2, first.counts);
+        assertEquals("acdefgh", string(buffer));
+    }
+
+    @Test
+    void recountsBuffersThatCannotReportChanges() {
+        ParsableByteBuffer foreign = foreign(buffer("abcd"));
+        ParsableByteBuffer buffer = streams.concatenate(List.of(foreign, buffer("efgh")));
+        foreign.consume(0L, 2L);
+        assertEquals("cdefgh", string(buffer));
+    }
+
+    @Test
+    void seesConsumptionsOfTheBuffers() {
+        AppendableParsableByteBuffer first = buffer("abcd");
+        AppendableParsableByteBuffer second = buffer("efgh");
+        ParsableByteBuffer buffer = streams.concatenate(List.of(first, second));
+        assertEquals((byte) 'e', buffer.get(4L));
+        first.consume(0L, 3L);
+        assertEquals((byte) 'f', buffer.get(2L));
+        assertEquals("defgh", string(buffer));
+    }
+
+    @Test
+    void seesConsumptionsThroughPartitions() {
+        AppendableParsableByteBuffer first = buffer("abcd");
+        AppendableParsableByteBuffer second = buffer("efgh");
+        ParsableByteBuffer buffer = streams.concatenate(List.of(first, second));
+        assertEquals(8L, buffer.count());
+        ParsableByteBuffer partition = buffer.partition(2L, 4L);
+        partition.consume(1L, 2L);
+        assertEquals(6L, buffer.count());
+        assertEquals("abcfgh", string(buffer));
+        assertEquals("cf", string(partition));
+    }
+
+    private AppendableParsableByteBuffer buffer(String content) {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(content.length() + 4);
+        buffer.append(content.getBytes(StandardCharsets.US_ASCII), 0, content.length());
+        return buffer;
+    }
+
+    private static String string(ParsableByteBuffer buffer) {
+        return buffer.toString(0L, buffer.count(), StandardCharsets.US_ASCII);
+    }
+
+    private static ParsableByteBuffer foreign(ParsableByteBuffer buffer) {
+        // Implemented outside of this package, so the buffer cannot report its changes
+        return (ParsableByteBuffer) Proxy.newProxyInstance(ParsableByteBuffer.class.getClassLoader(), new Class<?>[] {ParsableByteBuffer.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(buffer, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static class CountingBuffer extends ArrayParsableByteBuffer {
+        private int counts;
+
+        private CountingBuffer(String content) {
+            super(content.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public long count() {
+            counts++;
+            return super.count();
+        }
+    }
+}
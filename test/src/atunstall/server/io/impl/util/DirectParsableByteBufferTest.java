@@ -0,0 +1,108 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DirectParsableByteBufferTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void appendsBeyondInitialCapacity() {
+        AppendableParsableByteBuffer buffer = streams.createDirectByteBuffer(4);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        buffer.append(data, 0, 600);
+        buffer.append(data, 600, 400);
+        assertEquals(1000L, buffer.count());
+        assertArrayEquals(data, bytes(buffer));
+    }
+
+    @Test
+    void consumesFromEitherEndAndTheMiddle() {
+        AppendableParsableByteBuffer buffer = buffer("0123456789");
+        buffer.consume(0L, 2L);
+        assertEquals("23456789", string(buffer));
+        buffer.consume(6L, 2L);
+        assertEquals("234567", string(buffer));
+        buffer.consume(2L, 2L);
+        assertEquals("2367", string(buffer));
+        assertEquals(6L, buffer.bytesConsumed());
+    }
+
+    @Test
+    void rollbackRestoresConsumedBytes() {
+        AppendableParsableByteBuffer buffer = buffer("hello world");
+        buffer.consume(0L, 3L);
+        buffer.consume(2L, 4L);
+        buffer.rollback();
+        assertEquals("hello world", string(buffer));
+        assertEquals(0L, buffer.bytesConsumed());
+    }
+
+    @Test
+    void searchesAndCompares() {
+        AppendableParsableByteBuffer buffer = buffer("key: value\r\n");
+        assertEquals(3L, buffer.indexOf(0L, ": ".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(-1L, buffer.indexOf(0L, "missing".getBytes(StandardCharsets.US_ASCII)));
+        assertTrue(buffer.compare(5L, "value".getBytes(StandardCharsets.US_ASCII)));
+        assertFalse(buffer.compare(0L, "value".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void wrapsNioBuffersWithoutCopying() {
+        java.nio.ByteBuffer nio = java.nio.ByteBuffer.allocateDirect(4).put(new byte[] {1, 2, 3, 4}).flip();
+        ParsableByteBuffer buffer = streams.createByteBuffer(nio);
+        nio.put(1, (byte) 9);
+        assertEquals(9, buffer.get(1L));
+        assertEquals(4L, buffer.count());
+    }
+
+    @Test
+    void copiesReadOnlyBuffersOnWrite() {
+        java.nio.ByteBuffer nio = java.nio.ByteBuffer.wrap("0123456789".getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+        ParsableByteBuffer buffer = streams.createByteBuffer(nio);
+        buffer.consume(0L, 1L);
+        buffer.consume(8L, 1L);
+        buffer.consume(2L, 3L);
+        assertEquals("12678", string(buffer));
+        buffer.clear(0L, 1L);
+        assertEquals(0, buffer.get(0L));
+        assertEquals((byte) '0', nio.get(0));
+        assertEquals((byte) '3', nio.get(3));
+    }
+
+    @Test
+    void clearsBytes() {
+        AppendableParsableByteBuffer buffer = buffer("secret");
+        buffer.clear(0L, 6L);
+        assertArrayEquals(new byte[6], bytes(buffer));
+    }
+
+    private AppendableParsableByteBuffer buffer(String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.US_ASCII);
+        AppendableParsableByteBuffer buffer = streams.createDirectByteBuffer(bytes.length);
+        buffer.append(bytes, 0, bytes.length);
+        return buffer;
+    }
+
+    private static byte[] bytes(ParsableByteBuffer buffer) {
+        byte[] bytes = new byte[(int) buffer.count()];
+        buffer.get(0L, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private static String string(ParsableByteBuffer buffer) {
+        return buffer.toString(0L, buffer.count(), StandardCharsets.US_ASCII);
+    }
+}
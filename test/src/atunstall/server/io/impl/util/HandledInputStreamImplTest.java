@@ -0,0 +1,210 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.BufferConsumer;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HandledInputStreamImplTest {
+    private final RecordingLogger logger = new RecordingLogger();
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(logger.logger());
+    private final HandledInputStreamImpl stream = new HandledInputStreamImpl(logger.logger(), () -> {});
+
+    @Test
+    void pausesBetweenTheWatermarks() {
+        stream.setWatermarks(4L, 8L);
+        AppendableParsableByteBuffer buffer = buffer(7);
+        assertTrue(stream.hasDemand(buffer));
+        buffer.append(new byte[1], 0, 1);
+        assertFalse(stream.hasDemand(buffer));
+        buffer.consume(0L, 3L);
+        assertFalse(stream.hasDemand(buffer));
+        buffer.consume(0L, 1L);
+        assertTrue(stream.hasDemand(buffer));
+    }
+
+    @Test
+    void keepsReadingForStarvedConsumers() {
+        stream.setWatermarks(1L, 2L);
+        AppendableParsableByteBuffer buffer = buffer(4);
+        stream.queue(b -> b.count() + 1L);
+        stream.consumeSafe(buffer);
+        assertEquals(4L, buffer.count());
+        assertTrue(stream.hasDemand(buffer));
+    }
+
+    @Test
+    void resumesWhenAConsumerIsQueued() {
+        stream.setWatermarks(1L, 2L);
+        AppendableParsableByteBuffer buffer = buffer(4);
+        stream.consumeSafe(buffer);
+        assertFalse(stream.hasDemand(buffer));
+        AtomicInteger resumed = new AtomicInteger();
+        stream.pause(resumed::incrementAndGet);
+        assertEquals(0, resumed.get());
+        stream.queue(b -> {
+            b.consumeAll();
+            return BufferConsumer.DONE;
+        });
+        assertEquals(1, resumed.get());
+        stream.queue(b -> BufferConsumer.DONE);
+        assertEquals(1, resumed.get());
+    }
+
+    @Test
+    void resumesImmediatelyAfterAChangeDuringConsumption() {
+        stream.setWatermarks(1L, 2L);
+        AppendableParsableByteBuffer buffer = buffer(4);
+        stream.queue(b -> {
+            stream.queue(c -> c.count() + 1L);
+            return BufferConsumer.DONE;
+        });
+        stream.consumeSafe(buffer);
+        AtomicInteger resumed = new AtomicInteger();
+        stream.pause(resumed::incrementAndGet);
+        assertEquals(1, resumed.get());
+    }
+
+    @Test
+    void resumesWhenTheWatermarksChange() {
+        stream.setWatermarks(1L, 2L);
+        AppendableParsableByteBuffer buffer = buffer(4);
+        stream.consumeSafe(buffer);
+        assertFalse(stream.hasDemand(buffer));
+        AtomicInteger resumed = new AtomicInteger();
+        stream.pause(resumed::incrementAndGet);
+        stream.setWatermarks(8L, 16L);
+        assertEquals(1, resumed.get());
+        assertTrue(stream.hasDemand(buffer));
+    }
+
+    @Test
+    void waitsForTheNeededBytes() {
+        AppendableParsableByteBuffer buffer = buffer(2);
+        AtomicInteger calls = new AtomicInteger();
+        stream.queue(b -> {
+            calls.incrementAndGet();
+            if (b.count() < 4L) {
+                return 4L;
+            }
+            b.consume(0L, 4L);
+            return BufferConsumer.DONE;
+        });
+        stream.consumeSafe(buffer);
+        buffer.append(new byte[1], 0, 1);
+        stream.consumeSafe(buffer);
+        assertEquals(1, calls.get());
+        buffer.append(new byte[1], 0, 1);
+        stream.consumeSafe(buffer);
+        assertEquals(2, calls.get());
+        assertEquals(0L, buffer.count());
+    }
+
+    @Test
+    void retriesThrowingConsumersOnceMoreIsBuffered() {
+        AppendableParsableByteBuffer buffer = buffer(2);
+        AtomicInteger calls = new AtomicInteger();
+        stream.queueConsumer(b -> {
+            calls.incrementAndGet();
+            b.consume(0L, 1L);
+            b.consume(0L, 2L);
+        });
+        stream.consumeSafe(buffer);
+        assertEquals(2L, buffer.count());
+        assertEquals(1, stream.consumerCount());
+        buffer.append(new byte[1], 0, 1);
+        stream.consumeSafe(buffer);
+        assertEquals(0L, buffer.count());
+        assertTrue(logger.errors().isEmpty());
+    }
+
+    @Test
+    void throwingConsumersDoNotRestoreBytesOfEarlierConsumers() {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(8);
+        buffer.append(new byte[] {1, 2, 3}, 0, 3);
+        stream.queue(b -> {
+            b.consume(0L, 1L);
+            return BufferConsumer.DONE;
+        });
+        stream.queueConsumer(b -> {
+            b.consume(0L, 1L);
+            throw new IllegalStateException("incomplete");
+        });
+        stream.consumeSafe(buffer);
+        assertEquals(2L, buffer.count());
+        assertEquals(2, buffer.get(0L));
+    }
+
+    @Test
+    void dropsAndLogsFailingConsumers() {
+        AppendableParsableByteBuffer buffer = buffer(4);
+        RuntimeException failure = new RuntimeException("bug");
+        stream.queue(b -> {
+            throw failure;
+        });
+        stream.queue(b -> {
+            b.consumeAll();
+            return BufferConsumer.DONE;
+        });
+        stream.consumeSafe(buffer);
+        assertEquals(0L, buffer.count());
+        assertEquals(0, stream.consumerCount());
+        assertEquals(List.of(failure), logger.errors());
+    }
+
+    @Test
+    void dropsStarvedConsumersOnceClosed() throws Exception {
+        AtomicInteger ended = new AtomicInteger();
+        stream.queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                return BufferConsumer.needMore(buffer);
+            }
+
+            @Override
+            public void end() {
+                ended.incrementAndGet();
+            }
+        });
+        stream.close();
+        AppendableParsableByteBuffer buffer = buffer(2);
+        stream.consumeSafe(buffer);
+        stream.consumeSafe(buffer);
+        assertEquals(0, stream.consumerCount());
+        assertEquals(1, ended.get());
+        buffer.consumeAll();
+        stream.queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                return BufferConsumer.DONE;
+            }
+
+            @Override
+            public void end() {
+                ended.incrementAndGet();
+            }
+        });
+        stream.consumeSafe(buffer);
+        assertEquals(2, ended.get());
+    }
+
+    @Test
+    void rejectsInvertedWatermarks() {
+        assertThrows(IllegalArgumentException.class, () -> stream.setWatermarks(8L, 4L));
+    }
+
+    private AppendableParsableByteBuffer buffer(int count) {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(16);
+        buffer.append(new byte[count], 0, count);
+        return buffer;
+    }
+}
@@ -0,0 +1,90 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PartitionRegistryTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void partitionsFollowMiddleConsumptions() {
+        AppendableParsableByteBuffer buffer = buffer("aaaa|bbbb|cccc|dddd");
+        ParsableByteBuffer before = buffer.partition(0L, 4L);
+        ParsableByteBuffer overlapping = buffer.partition(5L, 4L);
+        ParsableByteBuffer after = buffer.partition(15L, 4L);
+        buffer.consume(7L, 6L);
+        assertEquals("aaaa", string(before));
+        assertEquals("bb", string(overlapping));
+        assertEquals("dddd", string(after));
+    }
+
+    @Test
+    void partitionsInsideConsumedRangesBecomeEmpty() {
+        AppendableParsableByteBuffer buffer = buffer("0123456789");
+        ParsableByteBuffer inside = buffer.partition(3L, 2L);
+        ParsableByteBuffer front = buffer.partition(0L, 2L);
+        buffer.consume(2L, 5L);
+        buffer.consume(0L, 1L);
+        assertEquals(0L, inside.count());
+        assertEquals("1", string(front));
+    }
+
+    @Test
+    void manyPartitionsStayOrdered() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append((char) ('a' + i % 26));
+        }
+        AppendableParsableByteBuffer buffer = buffer(content.toString());
+        List<ParsableByteBuffer> partitions = new ArrayList<>();
+        for (int i = 99; i >= 0; i--) {
+            partitions.add(0, buffer.partition(i, 1L));
+        }
+        buffer.consume(0L, 10L);
+        buffer.consume(40L, 10L);
+        for (int i = 0; i < 100; i++) {
+            long expected = i < 10 || i >= 50 && i < 60 ? 0L : 1L;
+            assertEquals(expected, partitions.get(i).count(), "partition " + i);
+            if (expected > 0L) {
+                assertEquals((byte) ('a' + i % 26), partitions.get(i).get(0L));
+            }
+        }
+    }
+
+    @Test
+    void doesNotRetainPartitions() throws InterruptedException {
+        AppendableParsableByteBuffer buffer = buffer("0123456789");
+        WeakReference<ParsableByteBuffer> reference = new WeakReference<>(buffer.partition(5L, 5L));
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        assertNull(reference.get());
+        for (int i = 0; i < 1000; i++) {
+            buffer.partition(0L, 10L);
+        }
+        ParsableByteBuffer live = buffer.partition(6L, 4L);
+        buffer.consume(2L, 2L);
+        assertEquals("6789", string(live));
+    }
+
+    private AppendableParsableByteBuffer buffer(String content) {
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(content.length());
+        buffer.append(content.getBytes(StandardCharsets.US_ASCII), 0, content.length());
+        return buffer;
+    }
+
+    private static String string(ParsableByteBuffer buffer) {
+        return buffer.toString(0L, buffer.count(), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,105 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedAppendableParsableByteBufferTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+
+    @Test
+    void appendsAcrossChunks() {
+        AppendableParsableByteBuffer buffer = streams.createSegmentedByteBuffer(256);
+        byte[] data = data(1000);
+        buffer.append(data, 0, 300);
+        buffer.append(data, 300, 700);
+        assertEquals(1000L, buffer.count());
+        assertArrayEquals(data, bytes(buffer));
+        assertEquals((byte) 700, buffer.get(700L));
+    }
+
+    @Test
+    void consumesFromTheFrontAndTheMiddle() {
+        AppendableParsableByteBuffer buffer = streams.createSegmentedByteBuffer(256);
+        byte[] data = data(1000);
+        buffer.append(data, 0, data.length);
+        buffer.consume(0L, 300L);
+        buffer.consume(100L, 400L);
+        assertEquals(300L, buffer.count());
+        assertEquals((byte) 300, buffer.get(0L));
+        assertEquals((byte) 399, buffer.get(99L));
+        assertEquals((byte) 800, buffer.get(100L));
+        assertEquals(700L, buffer.bytesConsumed());
+    }
+
+    @Test
+    void rollbackRestoresSegments() {
+        AppendableParsableByteBuffer buffer = streams.createSegmentedByteBuffer(256);
+        byte[] data = data(1000);
+        buffer.append(data, 0, data.length);
+        buffer.updateBackup();
+        buffer.consume(0L, 10L);
+        buffer.consume(200L, 500L);
+        buffer.rollback();
+        assertArrayEquals(data, bytes(buffer));
+        assertEquals(0L, buffer.bytesConsumed());
+    }
+
+    @Test
+    void findsSequencesStraddlingChunks() {
+        AppendableParsableByteBuffer buffer = streams.createSegmentedByteBuffer(256);
+        byte[] filler = new byte[254];
+        buffer.append(filler, 0, filler.length);
+        byte[] marker = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        buffer.append(marker, 0, marker.length);
+        assertEquals(254L, buffer.indexOf(0L, marker));
+        assertTrue(buffer.compare(254L, marker));
+        assertEquals("\r\n\r\n", buffer.toString(254L, 4L, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void commitsReservedBytes() {
+        AppendableParsableByteBuffer buffer = streams.createSegmentedByteBuffer(256);
+        buffer.append(data(250), 0, 250);
+        java.nio.ByteBuffer reserved = buffer.reserve(16);
+        assertTrue(reserved.remaining() >= 16);
+        reserved.put(new byte[] {42, 43});
+        buffer.commit(2);
+        assertEquals(252L, buffer.count());
+        assertEquals(42, buffer.get(250L));
+        assertEquals(43, buffer.get(251L));
+    }
+
+    @Test
+    void partitionsFollowConsumedBytes() {
+        AppendableParsableByteBuffer buffer = streams.createSegmentedByteBuffer(256);
+        byte[] data = data(600);
+        buffer.append(data, 0, data.length);
+        ParsableByteBuffer partition = buffer.partition(400L, 10L);
+        buffer.consume(0L, 100L);
+        buffer.consume(50L, 100L);
+        assertEquals(10L, partition.count());
+        assertEquals((byte) 400, partition.get(0L));
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static byte[] bytes(ParsableByteBuffer buffer) {
+        byte[] bytes = new byte[(int) buffer.count()];
+        buffer.get(0L, bytes, 0, bytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,180 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.BufferConsumer;
+import atunstall.server.io.api.ParsableByteBuffer;
+import atunstall.server.io.api.util.AppendableParsableByteBuffer;
+import atunstall.server.io.api.util.HandledInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WrappedInputStreamTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void readsEverythingThenEnds() throws IOException {
+        byte[] data = data(300000);
+        InputStream input = streams.wrap(new Source(data).stream);
+        assertEquals(data[0] & 0xFF, input.read());
+        byte[] rest = input.readAllBytes();
+        assertArrayEquals(java.util.Arrays.copyOfRange(data, 1, data.length), rest);
+        assertEquals(-1, input.read());
+        assertEquals(-1, input.read(new byte[4], 0, 4));
+    }
+
+    @Test
+    void skipsAndTransfers() throws IOException {
+        byte[] data = data(200000);
+        InputStream input = streams.wrap(new Source(data).stream);
+        byte[] head = input.readNBytes(10);
+        assertArrayEquals(java.util.Arrays.copyOf(data, 10), head);
+        long skipped = 0L;
+        while (skipped < 100000L) {
+            skipped += input.skip(100000L - skipped);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length - 100010L, input.transferTo(out));
+        assertArrayEquals(java.util.Arrays.copyOfRange(data, 100010, data.length), out.toByteArray());
+    }
+
+    @Test
+    void fullRingReleasesTheProducerThread() throws Exception {
+        byte[] data = data(1 << 20);
+        InputStream input = streams.wrap(new Source(data).stream);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (input.available() < 1 << 16 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        // The producer's only thread must still run other tasks while nothing is read
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+        assertTrue(ran.await(10L, TimeUnit.SECONDS));
+        assertArrayEquals(data, input.readAllBytes());
+    }
+
+    @Test
+    void spillsWhatProducersWithoutPausingPush() throws Exception {
+        byte[] data = data(200000);
+        HandledInputStream stream = streams.createInputStream();
+        InputStream input = streams.wrap(stream);
+        AppendableParsableByteBuffer buffer = streams.createByteBuffer(data.length);
+        buffer.append(data, 0, data.length);
+        stream.consumeSafe(buffer);
+        assertEquals(0L, buffer.count());
+        stream.close();
+        stream.consumeSafe(buffer);
+        assertArrayEquals(data, input.readAllBytes());
+    }
+
+    @Test
+    void keepsTheConsumerAtTheHeadWhileTheRingIsFull() throws Exception {
+        byte[] data = data(1 << 20);
+        Source source = new Source(data);
+        InputStream input = streams.wrap(source.stream);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (input.available() < 1 << 16 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        // A consumer queued later must not read ahead of the bytes left for the ring
+        AtomicLong seen = new AtomicLong();
+        CountDownLatch ended = new CountDownLatch(1);
+        source.stream.queue(new BufferConsumer() {
+            @Override
+            public long consume(ParsableByteBuffer buffer) {
+                seen.addAndGet(buffer.count());
+                return DONE;
+            }
+
+            @Override
+            public void end() {
+                ended.countDown();
+            }
+        });
+        assertArrayEquals(data, input.readAllBytes());
+        assertTrue(ended.await(10L, TimeUnit.SECONDS));
+        assertEquals(0L, seen.get());
+    }
+
+    @Test
+    void closingLeavesTheStream() throws Exception {
+        Source source = new Source(data(1 << 20));
+        InputStream input = streams.wrap(source.stream);
+        input.read();
+        input.close();
+        assertThrows(IOException.class, input::read);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+        while (source.stream.consumerCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertEquals(0, source.stream.consumerCount());
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Feeds data to a handled stream from a single thread, the way the file streams do.
+     */
+    private class Source implements Runnable {
+        private final byte[] data;
+        private final HandledInputStream stream;
+        private final AppendableParsableByteBuffer buffer;
+        private int offset;
+
+        private Source(byte[] data) {
+            this.data = data;
+            stream = streams.createInputStream();
+            stream.setWatermarks(1L << 14, 1L << 16);
+            buffer = streams.createByteBuffer(4096);
+            executor.execute(this);
+        }
+
+        @Override
+        public synchronized void run() {
+            if (offset < data.length) {
+                int count = Math.min(4096, data.length - offset);
+                buffer.append(data, offset, count);
+                offset += count;
+                if (offset == data.length) {
+                    try {
+                        stream.close();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+            stream.consumeSafe(buffer);
+            if (offset == data.length && buffer.count() == 0L) {
+                return;
+            } else if (offset < data.length && stream.hasDemand(buffer)) {
+                executor.execute(this);
+            } else {
+                stream.pause(() -> executor.execute(this));
+            }
+        }
+    }
+}
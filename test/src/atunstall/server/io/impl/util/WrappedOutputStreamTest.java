@@ -0,0 +1,123 @@
+package atunstall.server.io.impl.util;
+
+import atunstall.server.io.RecordingLogger;
+import atunstall.server.io.api.ByteBuffer;
+import atunstall.server.io.api.OutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WrappedOutputStreamTest {
+    private final ArrayStreamsImpl streams = new ArrayStreamsImpl(new RecordingLogger().logger());
+    private final Collector collector = new Collector();
+
+    @Test
+    void combinesSmallWrites() throws IOException {
+        java.io.OutputStream output = streams.wrap(collector, 256);
+        for (int i = 0; i < 1000; i++) {
+            output.write(i);
+        }
+        output.flush();
+        assertEquals(1000, collector.bytes.size());
+        assertEquals(4, collector.accepts);
+    }
+
+    @Test
+    void preservesTheOrderOfMixedWrites() throws IOException {
+        Random random = new Random(7L);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        java.io.OutputStream output = streams.wrap(collector, 256);
+        for (int i = 0; i < 500; i++) {
+            if (random.nextInt(4) == 0) {
+                output.write(i);
+                expected.write(i);
+            } else {
+                byte[] bytes = new byte[random.nextInt(600)];
+                random.nextBytes(bytes);
+                output.write(bytes, 0, bytes.length);
+                expected.write(bytes, 0, bytes.length);
+            }
+        }
+        output.close();
+        assertArrayEquals(expected.toByteArray(), collector.bytes.toByteArray());
+    }
+
+    @Test
+    void passesLargeWritesThrough() throws IOException {
+        java.io.OutputStream output = streams.wrap(collector, 256);
+        output.write(1);
+        output.write(new byte[4096], 0, 4096);
+        assertEquals(2, collector.accepts);
+        assertEquals(4097, collector.bytes.size());
+    }
+
+    @Test
+    void closingFlushesAndRejectsWrites() throws IOException {
+        java.io.OutputStream output = streams.wrap(collector, 256);
+        output.write(new byte[10], 0, 10);
+        output.close();
+        output.close();
+        assertEquals(10, collector.bytes.size());
+        assertThrows(IOException.class, () -> output.write(1));
+    }
+
+    @Test
+    void reportsFailedBatches() throws IOException {
+        collector.failing = true;
+        java.io.OutputStream output = streams.wrap(collector, 256);
+        output.write(new byte[10], 0, 10);
+        assertThrows(IOException.class, output::flush);
+        collector.failing = false;
+        output.write(new byte[10], 0, 10);
+        output.flush();
+        assertEquals(10, collector.bytes.size());
+    }
+
+    @Test
+    void handsBatchesOffToTheModuleThreads() throws IOException {
+        java.io.OutputStream output = streams.wrap(collector, 256);
+        output.write(new byte[200], 0, 200);
+        output.write(new byte[200], 0, 200);
+        output.flush();
+        assertEquals(2, collector.threads.size());
+        assertTrue(collector.threads.stream().allMatch(n -> n.startsWith("IO-Streams-")), collector.threads.toString());
+    }
+
+    @Test
+    void rejectsNonPositiveBufferSizes() {
+        assertThrows(IllegalArgumentException.class, () -> streams.wrap(collector, 0));
+    }
+
+    private static class Collector implements OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<String> threads = new ArrayList<>();
+        private volatile boolean failing;
+        private int accepts;
+
+        @Override
+        public synchronized void accept(ByteBuffer buffer) {
+            if (failing) {
+                throw new IllegalStateException("failing");
+            }
+            byte[] copy = new byte[(int) buffer.count()];
+            buffer.get(0L, copy, 0, copy.length);
+            bytes.write(copy, 0, copy.length);
+            threads.add(Thread.currentThread().getName());
+            accepts++;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}